@@ -1,8 +1,14 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.AdminInterceptor;
+import com.hmdp.utils.LocalCache;
+import com.hmdp.utils.SignedTokenManager;
 import com.hmdp.utils.LoginInterceptor;
+import com.hmdp.utils.RateLimitInterceptor;
 import com.hmdp.utils.RefreshTokenInterceptor;
+import com.hmdp.utils.SeckillRateLimiter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
@@ -22,6 +28,18 @@ public class MvcConfig implements WebMvcConfigurer {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private SeckillRateLimiter seckillRateLimiter;
+
+    @Resource
+    private LocalCache localCache;
+
+    @Resource
+    private SignedTokenManager signedTokenManager;
+
+    @Value("${hmdp.admin.token:}")
+    private String adminToken;
+
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
 
@@ -36,9 +54,16 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/upload/**",
                         "/blog/hot",
                         "/user/code",
-                        "/user/login"
+                        "/user/login",
+                        "/cache/**"
                 ).order(1);
+        //  运维接口 (缓存预热等) 不对普通用户开放, 只校验运维 token
+        registry.addInterceptor(new AdminInterceptor(adminToken))
+                .addPathPatterns("/cache/**").order(1);
+        //  秒杀限流拦截器, 放在登陆拦截器之后, 这样可以按用户限流
+        registry.addInterceptor(new RateLimitInterceptor(seckillRateLimiter))
+                .addPathPatterns("/voucher-order/seckill/**").order(2);
         //  登陆拦截器
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).addPathPatterns("/**").order(0);
+        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate, localCache, signedTokenManager)).addPathPatterns("/**").order(0);
     }
 }
@@ -0,0 +1,54 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 16:05
+ * @Description: 秒杀接口限流配置 hmdp.rate-limit.*
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.rate-limit")
+public class RateLimitProperties {
+
+    /**
+     * 是否开启限流
+     */
+    private boolean enabled = true;
+
+    /**
+     * 单个节点, 每张优惠券每秒放行的请求数
+     */
+    private double voucherQps = 2000;
+
+    /**
+     * 单个节点, 每个用户每秒放行的请求数
+     */
+    private double userQps = 5;
+
+    /**
+     * 单独给某些优惠券配置每秒放行的请求数, key 为优惠券 id
+     */
+    private Map<Long, Double> voucherOverrides = new HashMap<>();
+
+    /**
+     * 集群限流 (Redis 滑动窗口), 默认关闭
+     */
+    private boolean clusterEnabled = false;
+
+    /**
+     * 集群限流窗口大小 (毫秒)
+     */
+    private long clusterWindowMs = 1000;
+
+    /**
+     * 集群限流: 窗口内每张优惠券放行的请求数
+     */
+    private long clusterVoucherLimit = 10000;
+}
@@ -0,0 +1,82 @@
+package com.hmdp.config;
+
+import com.hmdp.service.IShopService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.LocalCache;
+import com.hmdp.utils.SignedTokenManager;
+import com.hmdp.utils.SoldOutMarker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.hmdp.utils.RedisConstants.CACHE_BLOOM_ADD_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_RESTOCK_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_SYNC_CHANNEL;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 10:20
+ * @Description: Redis 发布订阅, 用于在各个节点之间广播消息
+ */
+@Configuration
+@Slf4j
+public class RedisListenerConfig {
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(
+            RedisConnectionFactory connectionFactory, LocalCache localCache, SoldOutMarker soldOutMarker,
+            SignedTokenManager signedTokenManager, IShopService shopService, CacheClient cacheClient) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+
+        //  缓存失效通知, 消息内容就是要删除的 key
+        container.addMessageListener((message, pattern) -> {
+            String key = new String(message.getBody(), StandardCharsets.UTF_8);
+            log.debug("收到缓存失效通知: {}", key);
+            localCache.invalidate(key);
+        }, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+
+        //  优惠券售罄通知, 消息内容是优惠券 id
+        container.addMessageListener((message, pattern) -> {
+            String voucherId = new String(message.getBody(), StandardCharsets.UTF_8);
+            log.debug("收到售罄通知: {}", voucherId);
+            soldOutMarker.markLocal(Long.valueOf(voucherId));
+        }, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+
+        //  优惠券补库存通知, 消息内容是优惠券 id
+        container.addMessageListener((message, pattern) -> {
+            String voucherId = new String(message.getBody(), StandardCharsets.UTF_8);
+            log.debug("收到补库存通知: {}", voucherId);
+            soldOutMarker.clearLocal(Long.valueOf(voucherId));
+        }, new ChannelTopic(SECKILL_RESTOCK_CHANNEL));
+
+        //  令牌吊销通知, 消息内容是令牌签名
+        container.addMessageListener((message, pattern) ->
+                signedTokenManager.markRevoked(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(LOGIN_REVOKE_CHANNEL));
+
+        //  商铺变更通知, 消息内容是商铺 id, 重新加载该商铺的地理位置
+        container.addMessageListener((message, pattern) -> {
+            String shopId = new String(message.getBody(), StandardCharsets.UTF_8);
+            log.debug("收到商铺变更通知: {}", shopId);
+            shopService.refreshGeoIndex(Long.valueOf(shopId));
+        }, new ChannelTopic(SHOP_GEO_SYNC_CHANNEL));
+
+        //  布隆过滤器新增通知, 消息内容是 key 前缀,id
+        container.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            int comma = body.lastIndexOf(',');
+            cacheClient.markBloomFilter(body.substring(0, comma), body.substring(comma + 1));
+        }, new ChannelTopic(CACHE_BLOOM_ADD_CHANNEL));
+
+        return container;
+    }
+}
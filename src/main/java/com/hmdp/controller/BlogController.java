@@ -6,6 +6,7 @@ import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
 import com.hmdp.entity.User;
+import com.hmdp.service.IBlogLikeService;
 import com.hmdp.service.IBlogService;
 import com.hmdp.service.IUserService;
 import com.hmdp.utils.SystemConstants;
@@ -32,6 +33,9 @@ public class BlogController {
     @Resource
     private IBlogService blogService;
 
+    @Resource
+    private IBlogLikeService blogLikeService;
+
 
     /**
      * 保存博客
@@ -54,19 +58,24 @@ public class BlogController {
     public Result likeBlog(@PathVariable("id") Long id) {
         log.info("开始点赞....");
 
-        return blogService.likeBlog(id);
+        return blogLikeService.toggleLike(id);
     }
 
+    /**
+     * 分页查询我的博客, 传了 lastId 时按 id 游标分页
+     *
+     * @param current
+     * @param lastId  上一页最后一篇博客的 id
+     * @return
+     */
     @GetMapping("/of/me")
-    public Result queryMyBlog(@RequestParam(value = "current", defaultValue = "1") Integer current) {
+    public Result queryMyBlog(
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "lastId", required = false) Long lastId) {
         // 获取登录用户
         UserDTO user = UserHolder.getUser();
         // 根据用户查询
-        Page<Blog> page = blogService.query()
-                .eq("user_id", user.getId()).page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 获取当前页数据
-        List<Blog> records = page.getRecords();
-        return Result.ok(records);
+        return Result.ok(queryBlogOfUser(user.getId(), current, lastId));
     }
 
     /**
@@ -115,13 +124,38 @@ public class BlogController {
     @GetMapping("/of/user")
     public Result queryBlogByUserId(
             @RequestParam(value = "current", defaultValue = "1") Integer current,
-            @RequestParam("id") Long id) {
+            @RequestParam("id") Long id,
+            @RequestParam(value = "lastId", required = false) Long lastId) {
         // 根据用户查询
+        return Result.ok(queryBlogOfUser(id, current, lastId));
+    }
+
+    /**
+     * 查询用户的博客, 都不做 COUNT 查询
+     * 传了 lastId 时按 id 倒序游标分页 (WHERE user_id = ? AND id < lastId ORDER BY id DESC LIMIT n), 翻得再深也只扫描一页,
+     * 否则按页码分页, 兼容老的客户端
+     *
+     * @param userId
+     * @param current
+     * @param lastId
+     * @return
+     */
+    private List<Blog> queryBlogOfUser(Long userId, Integer current, Long lastId) {
+        if (lastId != null) {
+            return blogService.query()
+                    .eq("user_id", userId)
+                    .lt("id", lastId)
+                    .orderByDesc("id")
+                    .last("LIMIT " + SystemConstants.MAX_PAGE_SIZE)
+                    .list();
+        }
+        //  和游标分页同样按 id 倒序, 这样第一页的最后一条可以直接作为 lastId
         Page<Blog> page = blogService.query()
-                .eq("user_id", id).page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+                .eq("user_id", userId)
+                .orderByDesc("id")
+                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE, false));
         // 获取当前页数据
-        List<Blog> records = page.getRecords();
-        return Result.ok(records);
+        return page.getRecords();
     }
 
     /**
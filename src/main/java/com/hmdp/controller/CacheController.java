@@ -0,0 +1,55 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.CacheRebuildExecutor;
+import com.hmdp.utils.CacheWarmer;
+import org.springframework.web.bind.annotation.*;
+
+import javax.annotation.Resource;
+import java.util.Map;
+
+/**
+ * <p>
+ * 缓存管理, 运维接口, 请求头需要带上 X-Admin-Token (见 AdminInterceptor)
+ * </p>
+ *
+ * @author dy
+ * @since 2026/10/18 21:50
+ */
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+
+    @Resource
+    private CacheWarmer cacheWarmer;
+
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
+
+    /**
+     * 手动触发缓存预热, 在后台执行
+     *
+     * @param reloadGeo 是否同时重建商铺地理索引
+     * @return
+     */
+    @PostMapping("/warm-up")
+    public Result warmUp(@RequestParam(value = "reloadGeo", defaultValue = "true") Boolean reloadGeo) {
+        if (!cacheWarmer.trigger(reloadGeo)) {
+            return Result.fail("缓存预热正在进行中");
+        }
+        return Result.ok();
+    }
+
+    /**
+     * 查询缓存预热进度和缓存重建线程池的运行指标
+     *
+     * @return
+     */
+    @GetMapping("/stats")
+    public Result stats() {
+        Map<String, Object> stats = cacheWarmer.status();
+        stats.put("rebuild", cacheRebuildExecutor.stats());
+        return Result.ok(stats);
+    }
+}
@@ -10,6 +10,7 @@ import com.hmdp.utils.SystemConstants;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.util.List;
 
 /**
  * <p>
@@ -45,10 +46,8 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        // 写入数据库, 返回店铺id
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -71,6 +70,9 @@ public class ShopController {
      * @param current
      * @param x
      * @param y
+     * @param lastId       上一页最后一个商铺的 id
+     * @param lastScore    上一页最后一个商铺的评分, 不按坐标查询时使用
+     * @param lastDistance 上一页最后一个商铺的距离, 按坐标查询时使用
      * @return
      */
     @GetMapping("/of/type")
@@ -78,27 +80,44 @@ public class ShopController {
             @RequestParam("typeId") Integer typeId,
             @RequestParam(value = "current", defaultValue = "1") Integer current,
             @RequestParam(value = "x", required = false) Double x,
-            @RequestParam(value = "y", required = false) Double y
+            @RequestParam(value = "y", required = false) Double y,
+            @RequestParam(value = "lastId", required = false) Long lastId,
+            @RequestParam(value = "lastScore", required = false) Integer lastScore,
+            @RequestParam(value = "lastDistance", required = false) Double lastDistance
     ) {
-        return shopService.queryShopByType(typeId, current, x, y);
+        return shopService.queryShopByType(typeId, current, x, y, lastId, lastScore, lastDistance);
     }
 
     /**
      * 根据商铺名称关键字分页查询商铺信息
      *
+     * 传了 lastId 时按 id 游标分页 (id > lastId ORDER BY id LIMIT n), 不做 OFFSET 和 COUNT
+     *
      * @param name    商铺名称关键字
      * @param current 页码
+     * @param lastId  上一页最后一个商铺的 id
      * @return 商铺列表
      */
     @GetMapping("/of/name")
     public Result queryShopByName(
             @RequestParam(value = "name", required = false) String name,
-            @RequestParam(value = "current", defaultValue = "1") Integer current
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "lastId", required = false) Long lastId
     ) {
-        // 根据类型分页查询
+        if (lastId != null) {
+            List<Shop> shops = shopService.query()
+                    .like(StrUtil.isNotBlank(name), "name", name)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + SystemConstants.MAX_PAGE_SIZE)
+                    .list();
+            return Result.ok(shops);
+        }
+        // 根据类型分页查询, 不做 COUNT 查询, 和游标分页同样按 id 正序
         Page<Shop> page = shopService.query()
                 .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+                .orderByAsc("id")
+                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE, false));
         // 返回数据
         return Result.ok(page.getRecords());
     }
@@ -0,0 +1,22 @@
+package com.hmdp.service;
+
+import com.hmdp.dto.Result;
+
+/**
+ * <p>
+ * 博客点赞服务类
+ * </p>
+ *
+ * @author dy
+ * @since 2026/10/18 18:30
+ */
+public interface IBlogLikeService {
+
+    /**
+     * 点赞 / 取消点赞, 返回切换后的点赞状态和点赞数
+     *
+     * @param id
+     * @return
+     */
+    Result toggleLike(Long id);
+}
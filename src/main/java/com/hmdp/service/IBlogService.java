@@ -18,14 +18,6 @@ public interface IBlogService extends IService<Blog> {
 
     Result queryBlogById(Long id);
 
-    /**
-     * 给博客点赞
-     *
-     * @param id
-     * @return
-     */
-    Result likeBlog(Long id);
-
     /**
      * 查询给博客点赞的用户
      *
@@ -0,0 +1,35 @@
+package com.hmdp.service;
+
+import com.hmdp.entity.Blog;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.List;
+
+/**
+ * <p>
+ * 关注推送 (Feed 流) 服务类
+ * </p>
+ *
+ * @author dy
+ * @since 2026/10/18 17:40
+ */
+public interface IFeedService {
+
+    /**
+     * 发布博客推送事件, 由后台消费者异步推送到所有粉丝的收件箱, 耗时和粉丝数量无关
+     *
+     * @param blog
+     */
+    void publish(Blog blog);
+
+    /**
+     * 滚动分页查询用户的关注推送: 合并用户收件箱和所关注大 V 的发件箱, 按时间倒序
+     *
+     * @param userId
+     * @param max    本次查询的最大时间戳 (上一页的 minTime)
+     * @param offset 跳过时间戳等于 max 的前 offset 条
+     * @param count
+     * @return 博客 id 和推送时间
+     */
+    List<ZSetOperations.TypedTuple<String>> queryFeed(Long userId, Long max, Integer offset, int count);
+}
@@ -39,7 +39,31 @@ public interface IShopService extends IService<Shop> {
      * @param current
      * @param x
      * @param y
+     * @param lastId    上一页最后一个商铺的 id
+     * @param lastScore    上一页最后一个商铺的评分
+     * @param lastDistance 上一页最后一个商铺的距离, 按坐标查询时和 lastId 一起作为游标
      * @return
      */
-    Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+    Result queryShopByType(Integer typeId, Integer current, Double x, Double y,
+                           Long lastId, Integer lastScore, Double lastDistance);
+
+    /**
+     * 新增商铺
+     *
+     * @param shop
+     * @return
+     */
+    Result saveShop(Shop shop);
+
+    /**
+     * 重新加载一个商铺的地理位置 (收到商铺变更通知时调用)
+     *
+     * @param id
+     */
+    void refreshGeoIndex(Long id);
+
+    /**
+     * 从数据库全量重建商铺地理索引
+     */
+    void reloadGeoIndex();
 }
@@ -3,10 +3,13 @@ package com.hmdp.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * <p>
@@ -58,4 +61,12 @@ public interface IUserService extends IService<User> {
      * @return
      */
     Result signInCount();
+
+    /**
+     * 根据 id 批量查询用户 (走缓存)
+     *
+     * @param ids
+     * @return 按 ids 顺序排列的 id -> 用户
+     */
+    Map<Long, UserDTO> queryUserByIds(Collection<Long> ids);
 }
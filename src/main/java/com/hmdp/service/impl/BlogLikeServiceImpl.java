@@ -0,0 +1,132 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.dto.LikeResult;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.Blog;
+import com.hmdp.service.IBlogLikeService;
+import com.hmdp.service.IBlogService;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.BLOG_CREATED_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_COUNT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_DIRTY_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+
+/**
+ * <p>
+ * 博客点赞服务实现类
+ * 点赞在 Redis 中用一个脚本完成 (一次往返), 点赞数由定时任务批量写回数据库
+ * </p>
+ *
+ * @author dy
+ * @since 2026/10/18 18:30
+ */
+@Service
+@Slf4j
+public class BlogLikeServiceImpl implements IBlogLikeService {
+
+    /**
+     * 每批写回数据库的博客数
+     */
+    private static final long LIKE_FLUSH_BATCH_SIZE = 500;
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> LIKE_SCRIPT;
+
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("like.lua"));
+        LIKE_SCRIPT.setResultType(List.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private IBlogService blogService;
+
+    @Value("${hmdp.blog.hot-decay-seconds:0}")
+    private long hotDecaySeconds;
+
+    @Override
+    public Result toggleLike(Long id) {
+        //  1. 获取登录用户
+        Long userId = UserHolder.getUser().getId();
+
+        //  2. 执行脚本, 判断是否点过赞并切换
+        List<?> result = executeLikeScript(id, userId, "");
+        if (toLong(result.get(0)) == -1) {
+            //  Redis 中还没有这篇博客的计数, 从数据库加载后重试
+            Blog blog = blogService.query().select("liked").eq("id", id).one();
+            if (blog == null) {
+                return Result.fail("博客不存在哦~");
+            }
+            result = executeLikeScript(id, userId, String.valueOf(blog.getLiked() == null ? 0 : blog.getLiked()));
+        }
+
+        return Result.ok(new LikeResult(toLong(result.get(0)) == 1, toLong(result.get(1))));
+    }
+
+    private List<?> executeLikeScript(Long id, Long userId, String dbCount) {
+        return stringRedisTemplate.execute(
+                LIKE_SCRIPT,
+                Arrays.asList(BLOG_LIKED_KEY + id, BLOG_LIKED_COUNT_KEY, BLOG_LIKED_DIRTY_KEY, BLOG_HOT_KEY, BLOG_CREATED_KEY),
+                id.toString(), userId.toString(), String.valueOf(System.currentTimeMillis()), dbCount,
+                String.valueOf(hotDecaySeconds));
+    }
+
+    private static long toLong(Object value) {
+        return Long.parseLong(value.toString());
+    }
+
+    /**
+     * 定时把点赞计数写回数据库, 每个博客每个周期最多一次 UPDATE, 多个博客一次批量执行
+     * SPOP 取出待写回的博客是原子的, 多个节点同时执行也不会重复写; 写回的是计数的当前值, 重复写也没有问题
+     */
+    @Scheduled(fixedDelayString = "${hmdp.blog.like-flush-interval-ms:5000}")
+    public void flushLikeCounts() {
+        while (true) {
+            //  1. 取出一批待写回的博客 id
+            List<String> ids = stringRedisTemplate.opsForSet().pop(BLOG_LIKED_DIRTY_KEY, LIKE_FLUSH_BATCH_SIZE);
+            if (ids == null || ids.isEmpty()) {
+                return;
+            }
+
+            //  2. 批量查询计数
+            List<Object> counts = stringRedisTemplate.opsForHash().multiGet(BLOG_LIKED_COUNT_KEY, new ArrayList<>(ids));
+            List<Blog> blogs = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                Object count = counts.get(i);
+                if (count != null) {
+                    blogs.add(new Blog().setId(Long.valueOf(ids.get(i))).setLiked(Integer.valueOf(count.toString())));
+                }
+            }
+
+            //  3. 批量 UPDATE tb_blog SET liked = ? WHERE id = ?, 失败的话放回去下次再写
+            try {
+                blogService.updateBatchById(blogs);
+            } catch (Exception e) {
+                log.error("点赞数写回数据库失败, 博客: {}", ids, e);
+                stringRedisTemplate.opsForSet().add(BLOG_LIKED_DIRTY_KEY, ids.toArray(new String[0]));
+                return;
+            }
+
+            if (ids.size() < LIKE_FLUSH_BATCH_SIZE) {
+                return;
+            }
+        }
+    }
+}
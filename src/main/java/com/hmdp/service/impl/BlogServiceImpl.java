@@ -1,36 +1,44 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
-import com.hmdp.entity.Follow;
-import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.service.IFollowService;
+import com.hmdp.service.IFeedService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import static com.hmdp.utils.RedisConstants.BLOG_CREATED_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_COUNT_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_TTL;
 import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
-import static com.hmdp.utils.RedisConstants.FEED_KEY;
 
 /**
  * <p>
@@ -51,134 +59,172 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     private StringRedisTemplate stringRedisTemplate;
 
     @Resource
-    private IFollowService followService;
+    private IFeedService feedService;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Value("${hmdp.blog.hot-decay-seconds:0}")
+    private long hotDecaySeconds;
+
+    private static final int HOT_RANK_REBUILD_BATCH_SIZE = 1000;
 
 
     /**
-     * 分页查询
+     * 分页查询热门博客, 从 Redis 排行中取出 id (ZREVRANGE), 再通过博客缓存批量加载, 不需要在数据库中排序
      *
      * @param current
      * @return
      */
     @Override
     public Result queryHotBlog(Integer current) {
-        // 根据用户查询
-        Page<Blog> page = query()
-                .orderByDesc("liked")
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 获取当前页数据
-        List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(blog -> {
-            this.queryBlogUser(blog);
-            this.isBlogLiked(blog);
-        });
+        //  1. 从排行中取出当前页的博客 id
+        long start = (long) (current - 1) * SystemConstants.MAX_PAGE_SIZE;
+        Set<String> idSet = stringRedisTemplate.opsForZSet()
+                .reverseRange(BLOG_HOT_KEY, start, start + SystemConstants.MAX_PAGE_SIZE - 1);
+        if (idSet == null || idSet.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        List<Long> ids = idSet.stream().map(Long::valueOf).collect(Collectors.toList());
+
+        //  2. 通过缓存批量加载博客, 缓存中的对象是共享的, 复制一份再填充作者和点赞信息
+        Map<Long, Blog> blogMap = cacheClient.queryBatchWithPassThrough(
+                CACHE_BLOG_KEY, ids, Blog.class,
+                missIds -> listByIds(missIds).stream().collect(Collectors.toMap(Blog::getId, blog -> blog)),
+                CACHE_BLOG_TTL, TimeUnit.MINUTES);
+        List<Blog> records = blogMap.values().stream()
+                .map(blog -> BeanUtil.copyProperties(blog, Blog.class))
+                .collect(Collectors.toList());
+
+        // 批量查询作者和点赞状态
+        fillBlogInfo(records);
         return Result.ok(records);
     }
 
     /**
-     * 根据 id 查询
+     * 热度分数, 和 like.lua 中的算法一致
+     * 不衰减时就是点赞数; 衰减时为 log10(点赞数) + 发布时间 / 衰减周期, 每过一个衰减周期, 新博客相当于多了 10 倍的点赞
      *
-     * @param id
+     * @param liked
+     * @param createdSeconds
      * @return
      */
-    @Override
-    public Result queryBlogById(Long id) {
-        Blog blog = getById(id);
-
-        if (blog == null) {
-            return Result.fail("博客不存在哦~");
+    private double hotScore(long liked, long createdSeconds) {
+        if (hotDecaySeconds <= 0) {
+            return liked;
         }
-
-        //  查询 blog 相关用户, 将用户信息封装到 blog 中
-        queryBlogUser(blog);
-
-        //  查询 blog 是否被当前登录用户点赞
-        isBlogLiked(blog);
-
-        return Result.ok(blog);
+        return Math.log10(Math.max(liked, 1)) + (double) createdSeconds / hotDecaySeconds;
     }
 
     /**
-     * 查询 blog 是否被当前登录用户点赞
-     *
-     * @param blog
+     * 启动时如果热门排行不存在, 从数据库重建, 按 id 游标分批, 每批一次管道写入
+     * 点赞数优先取 Redis 中的计数 (可能还没写回数据库)
      */
-    private void isBlogLiked(Blog blog) {
-        UserDTO user = UserHolder.getUser();
-
-        if (user == null) {
-            //  用户未登录, 无序查询点赞列表
+    @PostConstruct
+    private void initHotRank() {
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_HOT_KEY))) {
             return;
         }
-        //  1. 获取登录用户
-        Long userId = user.getId();
-
-        //  2. 判断当前用户是否点过赞
-        String key = BLOG_LIKED_KEY + blog.getId();
-        //  查询 Redis 中是否有相应数据
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-
-        blog.setIsLike(BooleanUtil.isTrue(score != null));
-
+        long cursor = 0;
+        int total = 0;
+        while (true) {
+            List<Blog> blogs = query().select("id", "liked", "create_time")
+                    .gt("id", cursor).orderByAsc("id")
+                    .last("LIMIT " + HOT_RANK_REBUILD_BATCH_SIZE)
+                    .list();
+            if (blogs.isEmpty()) {
+                break;
+            }
+            List<Object> counts = stringRedisTemplate.opsForHash().multiGet(BLOG_LIKED_COUNT_KEY,
+                    blogs.stream().map(blog -> (Object) blog.getId().toString()).collect(Collectors.toList()));
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (int i = 0; i < blogs.size(); i++) {
+                    Blog blog = blogs.get(i);
+                    long liked = counts.get(i) != null ? Long.parseLong(counts.get(i).toString())
+                            : blog.getLiked() == null ? 0 : blog.getLiked();
+                    long created = blog.getCreateTime() == null ? 0
+                            : blog.getCreateTime().atZone(ZoneId.systemDefault()).toEpochSecond();
+                    conn.hSet(BLOG_CREATED_KEY, blog.getId().toString(), String.valueOf(created));
+                    conn.zAdd(BLOG_HOT_KEY, hotScore(liked, created), blog.getId().toString());
+                }
+                return null;
+            });
+            total += blogs.size();
+            cursor = blogs.get(blogs.size() - 1).getId();
+        }
+        log.info("热门博客排行重建完成, 共 {} 篇", total);
     }
 
     /**
-     * 给博客点赞
+     * 根据 id 查询
      *
      * @param id
      * @return
      */
     @Override
-    public Result likeBlog(Long id) {
+    public Result queryBlogById(Long id) {
+        Blog blog = getById(id);
 
-        //  1. 获取登录用户
-        Long userId = UserHolder.getUser().getId();
+        if (blog == null) {
+            return Result.fail("博客不存在哦~");
+        }
 
-        //  2. 判断当前用户是否点过赞
-        String key = BLOG_LIKED_KEY + id;
-        //  查询 Redis 中是否有相应数据
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
+        //  查询 blog 相关用户 以及 是否被当前登录用户点赞
+        fillBlogInfo(Collections.singletonList(blog));
 
-        if (score == null) {
-            //  3. 未点赞, 执行点赞操作
+        return Result.ok(blog);
+    }
 
-            //  操作数据库
-            // 修改点赞数量
-            boolean isSuccess = update().setSql("liked = liked + 1")
-                    .eq("id", id).update();
+    /**
+     * 批量完善博客信息: 作者信息 + 点赞数 + 当前登录用户是否点赞
+     * 作者一次批量查询 (走用户缓存), 点赞数和点赞状态通过管道一次性查询, 往返次数和博客数量无关
+     *
+     * @param blogs
+     */
+    private void fillBlogInfo(List<Blog> blogs) {
+        if (blogs == null || blogs.isEmpty()) {
+            return;
+        }
 
-            if (isSuccess) {
-                //  操作 Redis
-                stringRedisTemplate.opsForZSet().add(key, userId.toString(), System.currentTimeMillis());
+        //  1. 批量查询作者
+        List<Long> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toList());
+        Map<Long, UserDTO> userMap = userService.queryUserByIds(userIds);
+        for (Blog blog : blogs) {
+            UserDTO author = userMap.get(blog.getUserId());
+            if (author != null) {
+                blog.setName(author.getNickName());
+                blog.setIcon(author.getIcon());
             }
+        }
 
-
-        } else {
-            //  4. 已点赞, 取消点赞
-            boolean isSuccess = update().setSql("liked = liked - 1")
-                    .eq("id", id).update();
-
-            if (isSuccess) {
-                //  操作 Redis
-                stringRedisTemplate.opsForZSet().remove(key, userId.toString());
+        //  2. 管道批量查询: 点赞数 (HMGET, 以 Redis 中的计数为准, 数据库中的可能还没写回)
+        //  + 当前用户是否点过赞 (ZSCORE, 用户未登录时不查)
+        UserDTO user = UserHolder.getUser();
+        String[] blogIds = blogs.stream().map(blog -> blog.getId().toString()).toArray(String[]::new);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.hMGet(BLOG_LIKED_COUNT_KEY, blogIds);
+            if (user != null) {
+                String userId = user.getId().toString();
+                for (String blogId : blogIds) {
+                    conn.zScore(BLOG_LIKED_KEY + blogId, userId);
+                }
             }
+            return null;
+        });
 
+        @SuppressWarnings("unchecked")
+        List<Object> counts = (List<Object>) results.get(0);
+        for (int i = 0; i < blogs.size(); i++) {
+            Blog blog = blogs.get(i);
+            if (counts.get(i) != null) {
+                blog.setLiked(Integer.valueOf(counts.get(i).toString()));
+            }
+            if (user != null) {
+                blog.setIsLike(results.get(i + 1) != null);
+            }
         }
-
-
-        return Result.ok();
-    }
-
-     /**
-     * 将用户的个人信息和博客捆绑显示(也就是该博客显示的有发布博客的作者)
-     * @param blog
-     */
-    private void queryBlogUser(Blog blog) {
-        Long userId = blog.getUserId();
-        User user = userService.getById(userId);
-        blog.setName(user.getNickName());
-        blog.setIcon(user.getIcon());
     }
 
     /**
@@ -204,15 +250,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         //  4. 解析出用户的 id
         List<Long> ids = top5.stream().map(Long::valueOf).collect(Collectors.toList());
 
-        //  4.2 为了使点赞顺序一致, 我们可以改进下我们的 SQL 语句 (in 语句)
-        String idStr = StrUtil.join(",", ids);
-
-        //  5. 根据 id 查询用户
-        List<UserDTO> userDTOS = userService.query()
-                .in("id", ids).last("ORDER BY FIELD(id, " + idStr + ")").list()
-                .stream()
-                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
-                .collect(Collectors.toList());
+        //  5. 根据 id 批量查询用户, 返回结果和 ids 顺序一致, 保证点赞顺序
+        List<UserDTO> userDTOS = new ArrayList<>(userService.queryUserByIds(ids).values());
 
 
         return Result.ok(userDTOS);
@@ -236,22 +275,15 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             return Result.fail("报错博客失败");
         }
 
-        //  4.1 推送博客到所有粉丝
-        //  4.2 查询该博主所拥有的粉丝数量
-        Long userId = user.getId();
-        List<Follow> follows = followService.query().eq("follow_user_id", userId).list();
-
-        //  4.3 给所有粉丝发消息
-        for (Follow follow : follows) {
-//            Long followId = follow.getId();
-            Long followId = follow.getUserId();
-            String key = FEED_KEY + followId;
-//            stringRedisTemplate.opsForZSet().add(key, followId.toString(), System.currentTimeMillis());
-            //                                      这里应该传相应博客的 id
-            stringRedisTemplate.opsForZSet().add(key, blog.getId().toString(), System.currentTimeMillis());
-
-            log.info("博主 {} 发送博客 {}, 推送给: {} ", userId, blog.getId(), followId);
-        }
+        cacheClient.addToBloomFilter(CACHE_BLOG_KEY, blog.getId());
+
+        //  加入热门排行
+        long created = System.currentTimeMillis() / 1000;
+        stringRedisTemplate.opsForHash().put(BLOG_CREATED_KEY, blog.getId().toString(), String.valueOf(created));
+        stringRedisTemplate.opsForZSet().add(BLOG_HOT_KEY, blog.getId().toString(), hotScore(0, created));
+
+        //  4. 发布推送事件, 由后台消费者异步推送到所有粉丝的收件箱
+        feedService.publish(blog);
 
         // 返回id
         return Result.ok(blog.getId());
@@ -269,14 +301,11 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         //  1. 获取当前用户
         Long userId = UserHolder.getUser().getId();
 
-        //  2. 获取当前用户信箱
-        //  2. 取出信箱中的数据 (包括收到的博客 id, 和 该博客的 时间戳)
-        String key = FEED_KEY + userId;
-        Set<ZSetOperations.TypedTuple<String>> typedTuples = stringRedisTemplate.opsForZSet()
-                .reverseRangeByScoreWithScores(key, 0, max, offset, 2);
+        //  2. 读取收件箱, 并和关注的大 V 的发件箱合并 (包括收到的博客 id, 和 该博客的 时间戳)
+        List<ZSetOperations.TypedTuple<String>> typedTuples = feedService.queryFeed(userId, max, offset, 2);
 
         //  3. 判断信箱中的数据是否为空
-        if (typedTuples == null || typedTuples.isEmpty()) {
+        if (typedTuples.isEmpty()) {
             return Result.ok();
         }
         //  4. 解析信箱中的数据 (做一些其他的处理)
@@ -310,14 +339,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
 
         List<Blog> blogList = query().in("id", ids).last("ORDER BY FIELD(id, " + idStr+ " )").list();
 
-        //  6. 完善对应的博客信息
-        for (Blog blog : blogList) {
-            //  查询 blog 相关用户, 将用户信息封装到 blog 中
-            queryBlogUser(blog);
-
-            //  查询 blog 是否被当前登录用户点赞
-            isBlogLiked(blog);
-        }
+        //  6. 批量完善对应的博客信息 (作者 + 是否点赞)
+        fillBlogInfo(blogList);
 
         //  7. 封装数据并返回
         ScrollResult scrollResult = new ScrollResult();
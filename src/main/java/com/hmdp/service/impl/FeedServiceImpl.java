@@ -0,0 +1,402 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Follow;
+import com.hmdp.service.IFeedService;
+import com.hmdp.service.IFollowService;
+import com.hmdp.utils.StreamRetry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.FEED_BIG_AUTHOR_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_GROUP;
+import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_OUTBOX_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_STREAM_KEY;
+import static com.hmdp.utils.RedisConstants.FOLLOW_KEY;
+
+/**
+ * <p>
+ * 关注推送服务实现类
+ * 发布博客只往 stream.feed 写一条事件, 后台消费者按 user_id 游标分页读取粉丝, 每页用管道批量 ZADD 到粉丝收件箱
+ * 推拉结合: 粉丝数达到阈值的大 V 只写自己的发件箱, 读取时再和粉丝的收件箱做多路归并
+ * </p>
+ *
+ * @author dy
+ * @since 2026/10/18 17:40
+ */
+@Service
+@Slf4j
+public class FeedServiceImpl implements IFeedService {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private IFollowService followService;
+
+    /**
+     * 每页读取的粉丝数, 也是每次管道写入的收件箱数
+     */
+    @Value("${hmdp.feed.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${hmdp.feed.consumer-threads:1}")
+    private int consumerThreads;
+
+    /**
+     * 粉丝数达到该值的博主视为大 V, 博客只写入发件箱, 不再推送给每个粉丝
+     */
+    @Value("${hmdp.feed.big-author-threshold:5000}")
+    private long bigAuthorThreshold;
+
+    /**
+     * 收件箱 / 发件箱最多保留的博客数
+     */
+    @Value("${hmdp.feed.inbox-max-size:1000}")
+    private long inboxMaxSize;
+
+    @Value("${hmdp.feed.max-deliveries:5}")
+    private long maxDeliveries;
+
+    /**
+     * 事件至少存在这么久才可能被丢弃
+     */
+    @Value("${hmdp.feed.drop-min-age-seconds:300}")
+    private long dropMinAgeSeconds;
+
+    @Value("${hmdp.node-id:}")
+    private String nodeId;
+
+    @Value("${server.port:8080}")
+    private int serverPort;
+
+    private ExecutorService feedExecutor;
+
+    @PostConstruct
+    private void init() throws UnknownHostException {
+        if (StrUtil.isBlank(nodeId)) {
+            nodeId = InetAddress.getLocalHost().getHostName() + "-" + serverPort;
+        }
+
+        //  1. 创建消费者组 XGROUP CREATE stream.feed g1 0 MKSTREAM
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                    ((StringRedisConnection) connection)
+                            .xGroupCreate(FEED_STREAM_KEY, ReadOffset.from("0"), FEED_GROUP, true));
+        } catch (RedisSystemException e) {
+            //  BUSYGROUP: 消费者组已经存在
+            log.debug("消费者组已存在: {}", FEED_STREAM_KEY);
+        }
+
+        //  2. 启动消费者线程
+        feedExecutor = Executors.newFixedThreadPool(consumerThreads);
+        for (int i = 0; i < consumerThreads; i++) {
+            feedExecutor.submit(new FeedHandler(nodeId + "-feed" + i));
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        feedExecutor.shutdownNow();
+    }
+
+    @Override
+    public void publish(Blog blog) {
+        //  推送时间在发布时确定, 所有粉丝收件箱中的分数一致
+        Map<String, String> event = new HashMap<>(4);
+        event.put("blogId", blog.getId().toString());
+        event.put("userId", blog.getUserId().toString());
+        event.put("time", String.valueOf(System.currentTimeMillis()));
+        stringRedisTemplate.opsForStream().add(FEED_STREAM_KEY, event);
+    }
+
+    @Override
+    public List<ZSetOperations.TypedTuple<String>> queryFeed(Long userId, Long max, Integer offset, int count) {
+        //  1. 找出关注的大 V: SINTER follows:userId feed:big
+        Set<String> bigAuthors = stringRedisTemplate.opsForSet().intersect(FOLLOW_KEY + userId, FEED_BIG_AUTHOR_KEY);
+        List<String> keys = new ArrayList<>();
+        keys.add(FEED_KEY + userId);
+        if (bigAuthors != null) {
+            bigAuthors.forEach(authorId -> keys.add(FEED_OUTBOX_KEY + authorId));
+        }
+
+        //  2. 管道一次性读取收件箱和所有发件箱, 每个来源最多需要 offset + count 条
+        //  ZREVRANGEBYSCORE key max 0 WITHSCORES LIMIT 0 offset+count
+        int limit = offset + count;
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.zRevRangeByScoreWithScores(key.getBytes(StandardCharsets.UTF_8),
+                        RedisZSetCommands.Range.range().gte(0).lte(max),
+                        RedisZSetCommands.Limit.limit().offset(0).count(limit));
+            }
+            return null;
+        });
+
+        //  3. 多路归并, 每个来源本身已经按时间倒序, 用优先队列每次取出时间最大的那个
+        PriorityQueue<FeedCursor> queue = new PriorityQueue<>(
+                Comparator.comparingDouble((FeedCursor c) -> c.current.getScore()).reversed());
+        for (Object result : results) {
+            @SuppressWarnings("unchecked")
+            Iterator<ZSetOperations.TypedTuple<String>> it = ((Set<ZSetOperations.TypedTuple<String>>) result).iterator();
+            if (it.hasNext()) {
+                queue.add(new FeedCursor(it));
+            }
+        }
+
+        //  4. 跳过 offset 条, 取 count 条 (同一篇博客可能同时在收件箱和发件箱中, 去重)
+        List<ZSetOperations.TypedTuple<String>> page = new ArrayList<>(count);
+        Set<String> seen = new HashSet<>();
+        int skipped = 0;
+        while (!queue.isEmpty() && page.size() < count) {
+            FeedCursor cursor = queue.poll();
+            ZSetOperations.TypedTuple<String> tuple = cursor.current;
+            if (cursor.advance()) {
+                queue.add(cursor);
+            }
+            if (!seen.add(tuple.getValue())) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            page.add(tuple);
+        }
+        return page;
+    }
+
+    /**
+     * 推送一篇博客
+     * 大 V 只写入自己的发件箱; 普通博主推送到所有粉丝的收件箱, 按 user_id 游标分页, 不会一次把所有粉丝加载到内存
+     * ZADD 是幂等的, 中途失败重新推送也没有问题
+     *
+     * @param record
+     */
+    private void fanOut(MapRecord<String, Object, Object> record) {
+        Map<Object, Object> event = record.getValue();
+        Long authorId = Long.valueOf(event.get("userId").toString());
+        String blogId = event.get("blogId").toString();
+        double time = Double.parseDouble(event.get("time").toString());
+
+        //  1. 大 V 只写发件箱, 已经是大 V 的不再统计粉丝数 (粉丝数回落也不降级, 否则发件箱中的博客对粉丝不可见)
+        if (isBigAuthor(authorId)) {
+            String outboxKey = FEED_OUTBOX_KEY + authorId;
+            stringRedisTemplate.opsForZSet().add(outboxKey, blogId, time);
+            stringRedisTemplate.opsForZSet().removeRange(outboxKey, 0, -inboxMaxSize - 1);
+            log.debug("大 V {} 发送博客 {}, 写入发件箱", authorId, blogId);
+            return;
+        }
+
+        long cursor = 0;
+        int total = 0;
+        while (true) {
+            //  1. SELECT user_id FROM tb_follow WHERE follow_user_id = ? AND user_id > ? ORDER BY user_id LIMIT n
+            List<Follow> follows = followService.query()
+                    .select("user_id")
+                    .eq("follow_user_id", authorId)
+                    .gt("user_id", cursor)
+                    .orderByAsc("user_id")
+                    .last("LIMIT " + chunkSize)
+                    .list();
+            if (follows.isEmpty()) {
+                break;
+            }
+
+            //  2. 管道批量推送, 同时把收件箱裁剪到固定长度
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Follow follow : follows) {
+                    String key = FEED_KEY + follow.getUserId();
+                    conn.zAdd(key, time, blogId);
+                    conn.zRemRange(key, 0, -inboxMaxSize - 1);
+                }
+                return null;
+            });
+
+            total += follows.size();
+            cursor = follows.get(follows.size() - 1).getUserId();
+            if (follows.size() < chunkSize) {
+                break;
+            }
+        }
+        log.debug("博主 {} 发送博客 {}, 推送给 {} 个粉丝", authorId, blogId, total);
+    }
+
+    private boolean isBigAuthor(Long authorId) {
+        if (Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(FEED_BIG_AUTHOR_KEY, authorId.toString()))) {
+            return true;
+        }
+        Integer followers = followService.query().eq("follow_user_id", authorId).count();
+        if (followers < bigAuthorThreshold) {
+            return false;
+        }
+        log.info("博主 {} 粉丝数 {} 达到阈值, 改为写发件箱", authorId, followers);
+        stringRedisTemplate.opsForSet().add(FEED_BIG_AUTHOR_KEY, authorId.toString());
+        return true;
+    }
+
+    /**
+     * 多路归并时每个来源的游标
+     */
+    private static class FeedCursor {
+        private final Iterator<ZSetOperations.TypedTuple<String>> iterator;
+        private ZSetOperations.TypedTuple<String> current;
+
+        private FeedCursor(Iterator<ZSetOperations.TypedTuple<String>> iterator) {
+            this.iterator = iterator;
+            this.current = iterator.next();
+        }
+
+        private boolean advance() {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            current = iterator.next();
+            return true;
+        }
+    }
+
+    /**
+     * 处理完成后确认并删除消息, stream 中只保留未处理的事件
+     *
+     * @param record
+     */
+    private void handleRecord(MapRecord<String, Object, Object> record) {
+        fanOut(record);
+        stringRedisTemplate.opsForStream().acknowledge(FEED_STREAM_KEY, FEED_GROUP, record.getId());
+        stringRedisTemplate.opsForStream().delete(FEED_STREAM_KEY, record.getId());
+    }
+
+    private class FeedHandler implements Runnable {
+
+        private final Consumer consumer;
+
+        private FeedHandler(String consumerName) {
+            this.consumer = Consumer.from(FEED_GROUP, consumerName);
+        }
+
+        @Override
+        public void run() {
+            //  先处理上次宕机前没处理完的消息
+            handlePendingList();
+
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    //  XREADGROUP GROUP g1 c COUNT 10 BLOCK 2000 STREAMS stream.feed >
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            consumer,
+                            StreamReadOptions.empty().count(10).block(Duration.ofSeconds(2)),
+                            StreamOffset.create(FEED_STREAM_KEY, ReadOffset.lastConsumed())
+                    );
+                    if (list == null || list.isEmpty()) {
+                        continue;
+                    }
+                    for (MapRecord<String, Object, Object> record : list) {
+                        handleRecord(record);
+                    }
+                } catch (Exception e) {
+                    log.error("推送博客异常", e);
+                    handlePendingList();
+                }
+            }
+        }
+
+        private void handlePendingList() {
+            //  连续失败的轮数, 用来计算退避时间
+            int failedPasses = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    //  XREADGROUP GROUP g1 c COUNT 10 STREAMS stream.feed 0
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            consumer,
+                            StreamReadOptions.empty().count(10),
+                            StreamOffset.create(FEED_STREAM_KEY, ReadOffset.from("0"))
+                    );
+                    if (list == null || list.isEmpty()) {
+                        break;
+                    }
+                    int failures = 0;
+                    for (MapRecord<String, Object, Object> record : list) {
+                        try {
+                            handleRecord(record);
+                        } catch (Exception e) {
+                            log.error("推送博客异常, id: {}", record.getId(), e);
+                            if (StreamRetry.isTransient(e) || !dropIfExhausted(record)) {
+                                failures++;
+                            }
+                        }
+                    }
+                    //  还有处理失败的事件, 等一会再重新读取 pending-list, 否则每次重读都会让投递次数 +1
+                    failedPasses = failures == 0 ? 0 : failedPasses + 1;
+                    if (failures > 0) {
+                        StreamRetry.backoff(failedPasses);
+                    }
+                } catch (Exception e) {
+                    log.error("处理pendding推送异常", e);
+                    StreamRetry.backoff(++failedPasses);
+                }
+            }
+        }
+    }
+
+    /**
+     * 投递次数达到上限, 并且事件已经存在足够久 (说明重试是分散在一段时间内的), 直接丢弃 (粉丝仍然可以在博主主页看到博客),
+     * 避免一条坏消息卡住 pending-list
+     *
+     * @param record
+     * @return 是否已经丢弃
+     */
+    private boolean dropIfExhausted(MapRecord<String, Object, Object> record) {
+        Long timestamp = record.getId().getTimestamp();
+        long age = timestamp == null ? Long.MAX_VALUE : System.currentTimeMillis() - timestamp;
+        if (age < TimeUnit.SECONDS.toMillis(dropMinAgeSeconds)) {
+            return false;
+        }
+        String id = record.getId().getValue();
+        PendingMessages pending = stringRedisTemplate.opsForStream()
+                .pending(FEED_STREAM_KEY, FEED_GROUP, Range.closed(id, id), 1);
+        if (pending.isEmpty() || pending.get(0).getTotalDeliveryCount() < maxDeliveries) {
+            return false;
+        }
+        log.error("推送事件投递次数超过 {} 次, 丢弃: {}", maxDeliveries, record.getValue());
+        stringRedisTemplate.opsForStream().acknowledge(FEED_STREAM_KEY, FEED_GROUP, record.getId());
+        stringRedisTemplate.opsForStream().delete(FEED_STREAM_KEY, record.getId());
+        return true;
+    }
+}
@@ -1,6 +1,5 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
@@ -15,6 +14,7 @@ import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -70,7 +70,7 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
                     .eq("user_id", userId)
                     .eq("follow_user_id", id));
             if (isSuccess) {
-                stringRedisTemplate.opsForSet().remove(key, userId.toString());
+                stringRedisTemplate.opsForSet().remove(key, id.toString());
             }
         }
 
@@ -119,11 +119,8 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
         //  5. 解析 集合
         // 3.解析id集合
         List<Long> ids = intersect.stream().map(Long::valueOf).collect(Collectors.toList());
-        // 4.查询用户
-        List<UserDTO> users = userService.listByIds(ids)
-                .stream()
-                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
-                .collect(Collectors.toList());
+        // 4.批量查询用户 (一次 MGET, 未命中的一次 IN 查询)
+        List<UserDTO> users = new ArrayList<>(userService.queryUserByIds(ids).values());
         return Result.ok(users);
 
     }
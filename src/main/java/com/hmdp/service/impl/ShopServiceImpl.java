@@ -1,5 +1,6 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
@@ -12,17 +13,20 @@ import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RedisData;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.SingleFlight;
 import com.hmdp.utils.SystemConstants;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.geo.Distance;
-import org.springframework.data.geo.GeoResult;
-import org.springframework.data.geo.GeoResults;
-import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.domain.geo.GeoReference;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 
 import java.time.LocalDateTime;
@@ -30,6 +34,7 @@ import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -51,10 +56,32 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private CacheClient cacheClient;
 
+    @Resource
+    private SingleFlight singleFlight;
+
+    @Resource
+    private RedissonClient redissonClient;
 
     //  线程池
     private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
 
+    /**
+     * 附近商铺的查询半径 (米)
+     */
+    private static final double SHOP_NEARBY_RADIUS = 5000;
+
+    private static final int GEO_RELOAD_BATCH_SIZE = 1000;
+
+    /**
+     * 互斥锁模式下, 等待其他节点重建缓存的最长时间 (秒)
+     */
+    private static final long MUTEX_WAIT_SECONDS = 3;
+
+    /**
+     * 地理索引, 格子大小 0.01 度 (约 1 公里)
+     */
+    private final ShopGeoIndex shopGeoIndex = new ShopGeoIndex(0.01);
+
     /**
      * 根据id查询商铺信息
      *
@@ -80,14 +107,20 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 
     /**
      * 使用互斥锁解决缓存击穿问题
+     * 本节点内的并发请求通过 SingleFlight 合并, 只有一个线程去抢分布式锁, 其他线程等它的结果;
+     * 分布式锁只用来防其他节点, Redisson 的 tryLock 是订阅锁释放的消息来唤醒的, 不用休眠轮询
      *
      * @param id
      * @return
      */
     private Shop queryWithMutex(Long id) {
         String key = CACHE_SHOP_KEY + id;
+        return singleFlight.execute(key, () -> loadWithMutex(id));
+    }
+
+    private Shop loadWithMutex(Long id) {
+        String key = CACHE_SHOP_KEY + id;
 
-        log.info("开始查询:");
         //  1. 从 Redis 中查询店铺信息
         String cacheShop = stringRedisTemplate.opsForValue().get(key);
 
@@ -101,29 +134,27 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             return null;
         }
 
-        //  互斥锁的 key
-        String lockKey = LOCK_SHOP_KEY + id;
-
-        //  4. 未查询到结果, 从数据库中查询店铺
-        //  4.1 尝试获取互斥锁
-        Shop shop = null;
+        //  3. 未查询到结果, 尝试获取互斥锁, 别的节点正在重建的话, 等它释放锁
+        RLock lock = redissonClient.getLock(LOCK_SHOP_KEY + id);
+        boolean isLock;
         try {
-            boolean flag = tryLocal(lockKey);
-            //  4.2 获取互斥锁失败, 休眠, 重新获取
-            while (!flag) {
-                log.info("获取互斥锁失败, 休眠, 重新获取");
-                Thread.sleep(50);
-                flag = tryLocal(lockKey);
-            }
+            isLock = lock.tryLock(MUTEX_WAIT_SECONDS, LOCK_SHOP_TTL, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
 
-            //  4.3 获取互斥锁成功, 从数据库查询, 添加进缓存
-            log.info("获取互斥锁成功, 从数据库查询, 添加进缓存");
+        //  3.1 等太久了, 不再等别的节点, 直接查数据库 (不写缓存), 最多每个节点查一次
+        if (!isLock) {
+            log.warn("等待店铺缓存重建超时, 直接查询数据库, id: {}", id);
+            return getById(id);
+        }
 
-            //  ** 这里应该再次查询缓存中是否有数据, 防止我们获取的锁是别的线程刚释放的 **
+        try {
+            //  ** 这里应该再次查询缓存中是否有数据, 防止我们获取的锁是别的节点刚释放的 **
             //  而此时缓存中已经有过我们要的数据了
             cacheShop = stringRedisTemplate.opsForValue().get(key);
             if (StrUtil.isNotBlank(cacheShop)) {
-                log.info("缓存中已经存在我们要的数据了");
                 return JSONUtil.toBean(cacheShop, Shop.class);
             }
 
@@ -132,10 +163,8 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
                 return null;
             }
 
-
-            //  缓存中还没有数据, 从数据库查询
-            shop = getById(id);
-            Thread.sleep(200);  // TODO: 2023/10/22 这因为数据库在本地, 我们让它慢一点
+            //  4. 缓存中还没有数据, 从数据库查询
+            Shop shop = getById(id);
 
             //  解决缓存穿透问题, 添加空值
             if (shop == null) {
@@ -144,19 +173,14 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             }
 
             //  6. 查出店铺信息, 加入缓存
-            String jsonShop = JSONUtil.toJsonStr(shop);
-            //  加入 缓存超时时间
-            stringRedisTemplate.opsForValue().set(key, jsonShop, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
 
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            //  7. 返回数据给前端
+            return shop;
         } finally {
-            //  7. 释放互斥锁
-            unlock(lockKey);
+            //  8. 释放互斥锁
+            lock.unlock();
         }
-
-        //  8. 返回数据给前端
-        return shop;
     }
 
 
@@ -312,7 +336,7 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         //  0. 判断店铺 id 是否存在
         Long id = shop.getId();
         if (id == null) {
-            Result.fail("店铺信息有误, 请重新操作");
+            return Result.fail("店铺信息有误, 请重新操作");
         }
 
         //  店铺缓存对应 key
@@ -321,8 +345,13 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         //  1. 更新数据库
         updateById(shop);
 
-        //  2. 删除对应缓存
-        stringRedisTemplate.delete(key);
+        //  2. 事务提交之后再删除对应缓存, 并通知所有节点删除本地缓存, 更新地理索引
+        //  提交之前删除的话, 其他请求会把旧数据重新写回缓存
+        afterCommit(() -> {
+            cacheClient.delete(key);
+            cacheClient.delete(CACHE_SHOP_LIST_KEY + id);
+        });
+        publishShopChange(id);
 
         return Result.ok();
     }
@@ -356,9 +385,13 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      * @param current
      * @param x
      * @param y
+     * @param lastId
+     * @param lastScore
+     * @param lastDistance
      * @return
      */
-    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
+    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y,
+                                  Long lastId, Integer lastScore, Double lastDistance) {
 
         /*
             这里的代码不是自己实现的, 直接 copy 老师的代码 2023-11-5 22:06:39
@@ -368,55 +401,147 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         // 1.判断是否需要根据坐标查询
         if (x == null || y == null) {
             // 不需要坐标查询，按数据库查询
+            if (lastId != null && lastScore != null) {
+                //  按 评分, id 倒序游标分页, 走 (type_id, score, id) 索引, 不做 OFFSET 和 COUNT
+                //  WHERE type_id = ? AND (score < ? OR (score = ? AND id < ?)) ORDER BY score DESC, id DESC LIMIT n
+                List<Shop> shops = query()
+                        .eq("type_id", typeId)
+                        .and(w -> w.lt("score", lastScore)
+                                .or(o -> o.eq("score", lastScore).lt("id", lastId)))
+                        .orderByDesc("score", "id")
+                        .last("LIMIT " + SystemConstants.DEFAULT_PAGE_SIZE)
+                        .list();
+                return Result.ok(shops);
+            }
+            //  和游标分页同样按 评分, id 倒序, 这样第一页的最后一条可以直接作为游标
             Page<Shop> page = query()
                     .eq("type_id", typeId)
-                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
+                    .orderByDesc("score", "id")
+                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE, false));
             // 返回数据
             return Result.ok(page.getRecords());
         }
 
-        // 2.计算分页参数
-        int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
-        int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
-
-        // 3.查询redis、按照距离排序、分页。结果：shopId、distance
-        String key = SHOP_GEO_KEY + typeId;
-        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo() // GEOSEARCH key BYLONLAT x y BYRADIUS 10 WITHDISTANCE
-                .search(
-                        key,
-                        GeoReference.fromCoordinate(x, y),
-                        new Distance(5000),
-                        RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().limit(end)
-                );
-        // 4.解析出id
-        if (results == null) {
-            return Result.ok(Collections.emptyList());
+        // 2.在本地地理索引中按距离查询, 传了 lastDistance 时按 (距离, id) 游标分页, 否则按页码分页
+        List<ShopGeoIndex.Hit> hits;
+        if (lastDistance != null && lastId != null) {
+            hits = shopGeoIndex.search(typeId, x, y, SHOP_NEARBY_RADIUS, lastDistance, lastId,
+                    SystemConstants.DEFAULT_PAGE_SIZE);
+        } else {
+            int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
+            int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
+            hits = shopGeoIndex.search(typeId, x, y, SHOP_NEARBY_RADIUS, -1, 0, end);
+            hits = hits.size() <= from ? Collections.emptyList() : hits.subList(from, hits.size());
         }
-        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> list = results.getContent();
-        if (list.size() <= from) {
-            // 没有下一页了，结束
+        if (hits.isEmpty()) {
             return Result.ok(Collections.emptyList());
         }
-        // 4.1.截取 from ~ end的部分
-        List<Long> ids = new ArrayList<>(list.size());
-        Map<String, Distance> distanceMap = new HashMap<>(list.size());
-        list.stream().skip(from).forEach(result -> {
-            // 4.2.获取店铺id
-            String shopIdStr = result.getContent().getName();
-            ids.add(Long.valueOf(shopIdStr));
-            // 4.3.获取距离
-            Distance distance = result.getDistance();
-            distanceMap.put(shopIdStr, distance);
-        });
-        // 5.根据id查询Shop
-        String idStr = StrUtil.join(",", ids);
-        List<Shop> shops = query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
-        for (Shop shop : shops) {
-            shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
+
+        // 3.通过缓存批量加载商铺, 缓存中的对象是共享的, 复制一份再设置距离
+        List<Long> ids = new ArrayList<>(hits.size());
+        for (ShopGeoIndex.Hit hit : hits) {
+            ids.add(hit.getShopId());
         }
-        // 6.返回
+        Map<Long, Shop> shopMap = cacheClient.queryBatchWithPassThrough(
+                CACHE_SHOP_LIST_KEY, ids, Shop.class,
+                missIds -> listByIds(missIds).stream().collect(Collectors.toMap(Shop::getId, shop -> shop)),
+                CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        List<Shop> shops = new ArrayList<>(hits.size());
+        for (ShopGeoIndex.Hit hit : hits) {
+            Shop cached = shopMap.get(hit.getShopId());
+            if (cached != null) {
+                Shop shop = BeanUtil.copyProperties(cached, Shop.class);
+                shop.setDistance(hit.getDistance());
+                shops.add(shop);
+            }
+        }
+        // 4.返回
         return Result.ok(shops);
     }
 
+    /**
+     * 新增商铺, 提交后通知所有节点更新地理索引
+     *
+     * @param shop
+     * @return
+     */
+    @Override
+    @Transactional
+    public Result saveShop(Shop shop) {
+        save(shop);
+        //  布隆过滤器不能删除, 等事务提交之后再加入, 回滚的 id 不会留在过滤器中
+        afterCommit(() -> cacheClient.addToBloomFilter(CACHE_SHOP_KEY, shop.getId()));
+        publishShopChange(shop.getId());
+        return Result.ok(shop.getId());
+    }
+
+    /**
+     * 启动时加载地理索引, 之后定时全量重建, 兜底丢失的发布订阅消息
+     */
+    @Override
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${hmdp.shop.geo-reload-interval-ms:600000}", initialDelayString = "${hmdp.shop.geo-reload-interval-ms:600000}")
+    public void reloadGeoIndex() {
+        List<ShopGeoIndex.Point> all = new ArrayList<>();
+        long cursor = 0;
+        while (true) {
+            List<Shop> shops = query().select("id", "type_id", "x", "y")
+                    .gt("id", cursor).orderByAsc("id")
+                    .last("LIMIT " + GEO_RELOAD_BATCH_SIZE)
+                    .list();
+            if (shops.isEmpty()) {
+                break;
+            }
+            for (Shop shop : shops) {
+                all.add(new ShopGeoIndex.Point(shop.getId(), shop.getTypeId(), shop.getX(), shop.getY()));
+            }
+            cursor = shops.get(shops.size() - 1).getId();
+        }
+        shopGeoIndex.reload(all);
+        log.info("商铺地理索引加载完成, 共 {} 个商铺", all.size());
+    }
+
+    /**
+     * 收到商铺变更通知, 从数据库重新加载这一个商铺的位置
+     *
+     * @param id
+     */
+    @Override
+    public void refreshGeoIndex(Long id) {
+        Shop shop = query().select("id", "type_id", "x", "y").eq("id", id).one();
+        if (shop == null) {
+            shopGeoIndex.remove(id);
+        } else {
+            shopGeoIndex.upsert(new ShopGeoIndex.Point(shop.getId(), shop.getTypeId(), shop.getX(), shop.getY()));
+        }
+    }
+
+    /**
+     * 发布商铺变更通知, 在事务中时等到提交之后再发, 防止其他节点读到旧数据
+     *
+     * @param id
+     */
+    private void publishShopChange(Long id) {
+        afterCommit(() -> stringRedisTemplate.convertAndSend(SHOP_GEO_SYNC_CHANNEL, id.toString()));
+    }
+
+    /**
+     * 在事务中时等到提交之后再执行, 没有事务时直接执行
+     *
+     * @param action
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
 
 }
@@ -1,14 +1,12 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONUtil;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheClient;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
@@ -30,7 +28,7 @@ import static com.hmdp.utils.RedisConstants.SHOP_TYPE_KEY;
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private CacheClient cacheClient;
 
     /**
      * 查询店铺类型列表
@@ -44,12 +42,11 @@ public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> i
         //  编写业务流程
 
         //  1. 从 Redis 中查询店铺类型列表信息
-        String cacheShopList = stringRedisTemplate.opsForValue().get(key);
+        List<ShopType> shopTypes = cacheClient.getList(key, ShopType.class);
 
         //  2. 查询出店铺类型列表
-        if (StrUtil.isNotBlank(cacheShopList)) {
+        if (shopTypes != null) {
 
-            List<ShopType> shopTypes = JSONUtil.toList(cacheShopList, ShopType.class);
             log.info("从 Redis 中查询出店铺类型列表: {}", shopTypes);
 
             //  3. 查询到结果, 直接返回
@@ -65,11 +62,9 @@ public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> i
         }
 
         //  6. 查出店铺信息, 加入缓存
-        String jsonShopList = JSONUtil.toJsonStr(shopTypeList);
+        log.info("加入缓存的店铺类型列表信息: {}", shopTypeList);
 
-        log.info("加入缓存的店铺类型列表信息: {}", jsonShopList);
-
-        stringRedisTemplate.opsForValue().set(key, jsonShopList);
+        cacheClient.set(key, shopTypeList);
 
 
 
@@ -12,7 +12,9 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.SignedTokenManager;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
@@ -28,10 +30,12 @@ import javax.servlet.http.HttpSession;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
@@ -51,6 +55,12 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private SignedTokenManager signedTokenManager;
+
     /**
      * 发送验证码
      *
@@ -110,6 +120,11 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         UserDTO userDTO = new UserDTO();
         BeanUtils.copyProperties(user, userDTO);
 
+        //  无状态令牌模式, 用户信息签名后直接放在令牌里, 不写 Redis
+        if (signedTokenManager.isEnabled()) {
+            return Result.ok(signedTokenManager.issue(userDTO));
+        }
+
 
         //  5. 保存用户到 Redis
         //  5.1 将用户转化为 HashMap
@@ -146,14 +161,21 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 
         //  保存用户
         save(user);
+        cacheClient.addToBloomFilter(CACHE_USER_KEY, user.getId());
         return user;
     }
 
     @Override
     public Result logout(HttpServletRequest request) {
         String token = request.getHeader("authorization");
+        if (signedTokenManager.isEnabled()) {
+            //  令牌本身无法删除, 写入吊销集合
+            signedTokenManager.revoke(token);
+            return Result.ok("您已成功退出登录~");
+        }
         String key = LOGIN_USER_KEY + token;
-        stringRedisTemplate.delete(key);
+        //  删除 Redis 中的 token, 同时通知所有节点删除本地缓存的登录用户
+        cacheClient.delete(key);
         return Result.ok("您已成功退出登录~");
     }
 
@@ -241,4 +263,19 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         log.info("连续签到天数: {}", count);
         return Result.ok(count);
     }
+
+    /**
+     * 根据 id 批量查询用户 (走缓存)
+     *
+     * @param ids
+     * @return
+     */
+    @Override
+    public Map<Long, UserDTO> queryUserByIds(Collection<Long> ids) {
+        return cacheClient.queryBatchWithPassThrough(
+                CACHE_USER_KEY, ids, UserDTO.class,
+                missIds -> listByIds(missIds).stream()
+                        .collect(Collectors.toMap(User::getId, user -> BeanUtil.copyProperties(user, UserDTO.class))),
+                CACHE_USER_TTL, TimeUnit.MINUTES);
+    }
 }
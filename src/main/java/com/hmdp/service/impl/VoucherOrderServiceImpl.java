@@ -1,34 +1,62 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.Result;
+import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.IdGenerator;
+import com.hmdp.utils.SoldOutMarker;
+import com.hmdp.utils.StreamRetry;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.StringRedisConnection;
 import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SECKILL_VOUCHER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SECKILL_VOUCHER_TTL;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_DEAD_LETTER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_GROUP;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM_KEY;
 
 /**
  * <p>
@@ -45,7 +73,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private ISeckillVoucherService seckillVoucherService;
 
     @Resource
-    private RedisIdWorker redisIdWorker;
+    private IdGenerator idGenerator;
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
@@ -53,6 +81,12 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private RedissonClient redissonClient;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private SoldOutMarker soldOutMarker;
+
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
 
 
@@ -66,42 +100,154 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     }
 
 
-    //异步处理线程池
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    @Value("${hmdp.seckill.stream-shards:4}")
+    private int streamShards;
+
+    @Value("${hmdp.seckill.consumer-threads:2}")
+    private int consumerThreads;
+
+    @Value("${hmdp.seckill.claim-idle-seconds:30}")
+    private long claimIdleSeconds;
+
+    @Value("${hmdp.node-id:}")
+    private String nodeId;
+
+    @Value("${server.port:8080}")
+    private int serverPort;
+
+    /**
+     * 本节点需要消费的所有 stream key (按 voucherId 分片)
+     */
+    private List<String> streamKeys;
+
+    //异步处理线程池, 每个线程是消费者组中的一个独立消费者
+    private ExecutorService seckillOrderExecutor;
+
+    @Value("${hmdp.seckill.batch-size:100}")
+    private int batchSize;
+
+    @Value("${hmdp.seckill.max-deliveries:5}")
+    private long maxDeliveries;
+
+    @Value("${hmdp.seckill.dead-letter-max-len:10000}")
+    private long deadLetterMaxLen;
+
+    /**
+     * 消息至少存在这么久才可能转入死信队列
+     */
+    @Value("${hmdp.seckill.dead-letter-min-age-seconds:300}")
+    private long deadLetterMinAgeSeconds;
 
+    //  代理对象, 让事务生效 (消费者线程中拿不到 AopContext.currentProxy(), 所以这里直接注入)
+    @Lazy
+    @Resource
     private IVoucherOrderService proxy;
 
     //在类初始化之后执行，因为当这个类初始化好了之后，随时都是有可能要执行的
     @PostConstruct
-    private void init() {
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+    private void init() throws UnknownHostException {
+        if (StrUtil.isBlank(nodeId)) {
+            //  同一台机器上可能部署多个节点, 所以带上端口, 保证重启后名字不变, 能继续处理自己的 pending-list
+            nodeId = InetAddress.getLocalHost().getHostName() + "-" + serverPort;
+        }
+
+        //  1. 为每个分片创建消费者组 XGROUP CREATE stream.orders:i g1 0 MKSTREAM
+        streamKeys = new ArrayList<>(streamShards);
+        for (int i = 0; i < streamShards; i++) {
+            String streamKey = SECKILL_ORDER_STREAM_KEY + i;
+            streamKeys.add(streamKey);
+            createGroupIfAbsent(streamKey);
+        }
+
+        //  2. 启动消费者线程, 消费者名称 = 节点 + 线程编号
+        seckillOrderExecutor = Executors.newFixedThreadPool(consumerThreads);
+        for (int i = 0; i < consumerThreads; i++) {
+            seckillOrderExecutor.submit(new VoucherOrderHandler(nodeId + "-c" + i));
+        }
+        log.info("订单消费者启动, 节点: {}, 分片: {}, 线程: {}", nodeId, streamShards, consumerThreads);
     }
 
+    @PreDestroy
+    private void destroy() {
+        seckillOrderExecutor.shutdownNow();
+    }
+
+    private void createGroupIfAbsent(String streamKey) {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                    ((StringRedisConnection) connection)
+                            .xGroupCreate(streamKey, ReadOffset.from("0"), SECKILL_ORDER_GROUP, true));
+        } catch (RedisSystemException e) {
+            //  BUSYGROUP: 消费者组已经存在
+            log.debug("消费者组已存在: {}", streamKey);
+        }
+    }
+
+    /**
+     * 根据 voucherId 计算订单消息所在的 stream
+     *
+     * @param voucherId
+     * @return
+     */
+    private String streamKeyOf(Long voucherId) {
+        return SECKILL_ORDER_STREAM_KEY + Math.floorMod(voucherId.hashCode(), streamShards);
+    }
+
+    @SuppressWarnings("unchecked")
+    private StreamOffset<String>[] streamOffsets(ReadOffset readOffset) {
+        return streamKeys.stream()
+                .map(key -> StreamOffset.create(key, readOffset))
+                .toArray(StreamOffset[]::new);
+    }
+
+    /**
+     * 批量处理订单消息: 一个事务内创建所有订单, 然后按 stream 一次性确认
+     *
+     * @param records
+     */
+    private void handleRecords(List<MapRecord<String, Object, Object>> records) {
+        // 解析数据
+        List<VoucherOrder> voucherOrders = new ArrayList<>(records.size());
+        Map<String, List<RecordId>> idsByStream = new HashMap<>();
+        for (MapRecord<String, Object, Object> record : records) {
+            voucherOrders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+            idsByStream.computeIfAbsent(record.getStream(), k -> new ArrayList<>()).add(record.getId());
+        }
+        // 3.批量创建订单
+        proxy.createVoucherOrders(voucherOrders);
+        // 4.确认消息 XACK, 每个 stream 一次
+        idsByStream.forEach((stream, ids) -> stringRedisTemplate.opsForStream()
+                .acknowledge(stream, SECKILL_ORDER_GROUP, ids.toArray(new RecordId[0])));
+    }
 
     private class VoucherOrderHandler implements Runnable {
+
+        private final Consumer consumer;
+
+        private VoucherOrderHandler(String consumerName) {
+            this.consumer = Consumer.from(SECKILL_ORDER_GROUP, consumerName);
+        }
+
         @Override
         public void run() {
-            while (true) {
+            //  先处理上次宕机前没处理完的消息
+            handlePendingList();
+
+            while (!Thread.currentThread().isInterrupted()) {
                 try {
-                    // 1.获取消息队列中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS s1 >
+                    // 1.获取消息队列中的订单信息 XREADGROUP GROUP g1 c COUNT n BLOCK 2000 STREAMS stream.orders:0 ... >
                     List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                            StreamOffset.create("stream.orders", ReadOffset.lastConsumed())
+                            consumer,
+                            StreamReadOptions.empty().count(batchSize).block(Duration.ofSeconds(2)),
+                            streamOffsets(ReadOffset.lastConsumed())
                     );
                     // 2.判断订单信息是否为空
                     if (list == null || list.isEmpty()) {
                         // 如果为null，说明没有消息，继续下一次循环
                         continue;
                     }
-                    // 解析数据
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> value = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(value, new VoucherOrder(), true);
-                    // 3.创建订单
-                    createVoucherOrder(voucherOrder);
-                    // 4.确认消息 XACK
-                    stringRedisTemplate.opsForStream().acknowledge("s1", "g1", record.getId());
+                    // 解析数据, 批量创建订单, 确认消息
+                    handleRecords(list);
 
                 } catch (Exception e) {
                     log.error("处理订单异常", e);
@@ -112,39 +258,205 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         }
 
         private void handlePendingList() {
-            while (true) {
+            //  连续失败的次数, 用来计算退避时间
+            int failedPasses = 0;
+            while (!Thread.currentThread().isInterrupted()) {
                 try {
-                    // 1.获取pending-list中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS s1 0
+                    // 1.获取pending-list中的订单信息 XREADGROUP GROUP g1 c COUNT n STREAMS stream.orders:0 ... 0
                     List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1),
-                            StreamOffset.create("stream.orders", ReadOffset.from("0"))
+                            consumer,
+                            StreamReadOptions.empty().count(batchSize),
+                            streamOffsets(ReadOffset.from("0"))
                     );
                     // 2.判断订单信息是否为空
                     if (list == null || list.isEmpty()) {
                         // 如果为null，说明没有异常消息，结束循环
                         break;
                     }
-                    // 解析数据
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> value = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(value, new VoucherOrder(), true);
-                    // 3.创建订单
-                    createVoucherOrder(voucherOrder);
-                    // 4.确认消息 XACK
-                    stringRedisTemplate.opsForStream().acknowledge("s1", "g1", record.getId());
+                    int failures = 0;
+                    try {
+                        handleRecords(list);
+                    } catch (Exception e) {
+                        //  整批失败, 逐条处理, 找出有问题的那条消息
+                        log.error("批量处理pendding订单异常, 改为逐条处理", e);
+                        failures = handleOneByOne(list);
+                    }
+                    //  还有处理失败的消息, 等一会再重新读取 pending-list, 否则每次重读都会让投递次数 +1
+                    failedPasses = failures == 0 ? 0 : failedPasses + 1;
+                    if (failures > 0) {
+                        StreamRetry.backoff(failedPasses);
+                    }
                 } catch (Exception e) {
                     log.error("处理pendding订单异常", e);
-                    try {
-                        Thread.sleep(20);
-                    } catch (Exception ee) {
-                        ee.printStackTrace();
+                    StreamRetry.backoff(++failedPasses);
+                }
+            }
+        }
+
+
+    }
+
+    /**
+     * 逐条处理订单消息, 坏消息转入死信队列, 避免一条坏消息卡住整个 pending-list
+     *
+     * @param records
+     * @return 处理失败且仍留在 pending-list 中的消息数
+     */
+    private int handleOneByOne(List<MapRecord<String, Object, Object>> records) {
+        int failures = 0;
+        for (MapRecord<String, Object, Object> record : records) {
+            try {
+                handleRecords(Collections.singletonList(record));
+            } catch (Exception e) {
+                log.error("处理订单消息失败, stream: {}, id: {}", record.getStream(), record.getId(), e);
+                if (!StreamRetry.isTransient(e) && isPoison(record.getId(), deliveryCount(record))) {
+                    deadLetter(record);
+                } else {
+                    failures++;
+                }
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * 投递次数达到上限, 并且消息已经存在足够久 (说明重试是分散在一段时间内的), 才认为是坏消息
+     *
+     * @param id
+     * @param deliveryCount
+     * @return
+     */
+    private boolean isPoison(RecordId id, long deliveryCount) {
+        Long timestamp = id.getTimestamp();
+        long age = timestamp == null ? Long.MAX_VALUE : System.currentTimeMillis() - timestamp;
+        return deliveryCount >= maxDeliveries && age >= TimeUnit.SECONDS.toMillis(deadLetterMinAgeSeconds);
+    }
+
+    /**
+     * 查询消息被投递的次数 XPENDING key g1 id id 1
+     *
+     * @param record
+     * @return
+     */
+    private long deliveryCount(MapRecord<String, Object, Object> record) {
+        String id = record.getId().getValue();
+        PendingMessages pending = stringRedisTemplate.opsForStream()
+                .pending(record.getStream(), SECKILL_ORDER_GROUP, Range.closed(id, id), 1);
+        return pending.isEmpty() ? 0 : pending.get(0).getTotalDeliveryCount();
+    }
+
+    /**
+     * 转入死信队列, 并确认原消息, 死信队列中的消息需要人工处理
+     *
+     * @param record
+     */
+    private void deadLetter(MapRecord<String, Object, Object> record) {
+        Map<Object, Object> value = new HashMap<>(record.getValue());
+        value.put("stream", record.getStream());
+        value.put("recordId", record.getId().getValue());
+        stringRedisTemplate.opsForStream().add(SECKILL_ORDER_DEAD_LETTER_KEY, value);
+        stringRedisTemplate.opsForStream().acknowledge(record.getStream(), SECKILL_ORDER_GROUP, record.getId());
+        log.error("订单消息投递次数超过 {} 次, 转入死信队列: {}", maxDeliveries, value);
+    }
+
+    /**
+     * 认领其他消费者 (比如宕机的节点) 长时间未确认的消息 XPENDING + XCLAIM
+     */
+    @Scheduled(fixedDelayString = "${hmdp.seckill.claim-interval-ms:10000}")
+    public void claimPendingOrders() {
+        String claimer = nodeId + "-claimer";
+        Duration minIdle = Duration.ofSeconds(claimIdleSeconds);
+
+        for (String streamKey : streamKeys) {
+            try {
+                //  1. 查询 pending-list
+                PendingMessages pending = stringRedisTemplate.opsForStream()
+                        .pending(streamKey, SECKILL_ORDER_GROUP, Range.unbounded(), 100);
+                RecordId[] ids = pending.stream()
+                        .filter(p -> p.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0)
+                        .map(PendingMessage::getId)
+                        .toArray(RecordId[]::new);
+                if (ids.length == 0) {
+                    continue;
+                }
+                //  投递次数已达上限的消息, 认领后直接转入死信队列
+                Set<RecordId> poisonIds = pending.stream()
+                        .filter(p -> isPoison(p.getId(), p.getTotalDeliveryCount()))
+                        .map(PendingMessage::getId)
+                        .collect(Collectors.toSet());
+
+                //  2. 认领超时消息, XCLAIM 自身会再次校验空闲时间, 多个节点同时认领也只有一个能成功
+                List<StringRecord> claimed = stringRedisTemplate.execute((RedisCallback<List<StringRecord>>) connection ->
+                        ((StringRedisConnection) connection)
+                                .xClaim(streamKey, SECKILL_ORDER_GROUP, claimer, minIdle, ids));
+                if (claimed == null || claimed.isEmpty()) {
+                    continue;
+                }
+                log.info("从 {} 认领了 {} 条超时订单消息", streamKey, claimed.size());
+
+                //  3. 处理并确认, 失败的话消息仍在 pending-list 中, 下次会被重新认领
+                List<MapRecord<String, Object, Object>> records = new ArrayList<>(claimed.size());
+                for (StringRecord record : claimed) {
+                    MapRecord<String, Object, Object> mapRecord =
+                            MapRecord.create(streamKey, new HashMap<Object, Object>(record.getValue())).withId(record.getId());
+                    if (poisonIds.contains(record.getId())) {
+                        deadLetter(mapRecord);
+                    } else {
+                        records.add(mapRecord);
                     }
                 }
+                if (!records.isEmpty()) {
+                    handleRecords(records);
+                }
+            } catch (Exception e) {
+                log.error("认领超时订单消息异常, stream: {}", streamKey, e);
             }
         }
+    }
+
+    /**
+     * 裁剪订单 stream, 让 Redis 内存和重启时的回放量保持有界
+     * 只删除 已投递 且 已确认 的消息: 裁剪位置取 最后投递的 id 和 pending-list 中最小 id 中较小的那个 (XTRIM MINID ~)
+     * 死信队列按长度裁剪 (XTRIM MAXLEN ~)
+     */
+    @Scheduled(fixedDelayString = "${hmdp.seckill.trim-interval-ms:60000}")
+    public void trimOrderStreams() {
+        for (String streamKey : streamKeys) {
+            try {
+                //  1. 消费者组最后投递的消息
+                String lastDeliveredId = stringRedisTemplate.opsForStream().groups(streamKey).stream()
+                        .filter(group -> SECKILL_ORDER_GROUP.equals(group.groupName()))
+                        .map(StreamInfo.XInfoGroup::lastDeliveredId)
+                        .findFirst()
+                        .orElse(null);
+                if (lastDeliveredId == null || "0-0".equals(lastDeliveredId)) {
+                    continue;
+                }
 
+                //  2. 还未确认的消息不能删, MINID 会保留 id >= cutoff 的消息
+                PendingMessagesSummary summary = stringRedisTemplate.opsForStream().pending(streamKey, SECKILL_ORDER_GROUP);
+                String cutoff = lastDeliveredId;
+                if (summary != null && summary.getTotalPendingMessages() > 0
+                        && compareRecordId(summary.minRecordId(), RecordId.of(lastDeliveredId)) < 0) {
+                    cutoff = summary.minMessageId();
+                }
 
+                //  3. XTRIM key MINID ~ cutoff, MINID 是 Redis 6.2 新增的, 需要 Redis 6.2 及以上版本
+                String minId = cutoff;
+                stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                        ((StringRedisConnection) connection).execute("XTRIM", streamKey, "MINID", "~", minId));
+            } catch (Exception e) {
+                log.error("裁剪订单 stream 异常, stream: {}", streamKey, e);
+            }
+        }
+
+        //  4. 死信队列按长度裁剪
+        stringRedisTemplate.opsForStream().trim(SECKILL_ORDER_DEAD_LETTER_KEY, deadLetterMaxLen, true);
+    }
+
+    private static int compareRecordId(RecordId a, RecordId b) {
+        int c = Long.compare(a.getTimestamp(), b.getTimestamp());
+        return c != 0 ? c : Long.compare(a.getSequence(), b.getSequence());
     }
 
 
@@ -218,28 +530,54 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
     public Result seckillVoucher(Long voucherId) {
 
+        //  0. 本地校验, 不通过的请求不会访问 Redis
+        //  0.1 已经售罄
+        if (soldOutMarker.isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
+        }
+        //  0.2 秒杀时间 (本地缓存命中的话不访问 Redis)
+        SeckillVoucher seckillVoucher = cacheClient.queryWithPassThrough(
+                CACHE_SECKILL_VOUCHER_KEY, voucherId, SeckillVoucher.class,
+                seckillVoucherService::getById, CACHE_SECKILL_VOUCHER_TTL, TimeUnit.MINUTES);
+        if (seckillVoucher == null) {
+            return Result.fail("秒杀券不存在");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (seckillVoucher.getBeginTime() != null && now.isBefore(seckillVoucher.getBeginTime())) {
+            return Result.fail("秒杀尚未开始");
+        }
+        if (seckillVoucher.getEndTime() != null && now.isAfter(seckillVoucher.getEndTime())) {
+            return Result.fail("秒杀已经结束");
+        }
+
         //  获取用户
         Long userId = UserHolder.getUser().getId();
         // 获取本次订单的  id
-        long orderId = redisIdWorker.nextId("order");
-        //  1. 执行 lua 脚本
+        long orderId = idGenerator.nextId("order");
+        //  1. 执行 lua 脚本, 订单消息按 voucherId 分片写入对应的 stream
         Long result = stringRedisTemplate.execute(
                 SECKILL_SCRIPT,
                 Collections.emptyList(),
-                voucherId.toString(), userId.toString(), String.valueOf(orderId)
+                voucherId.toString(), userId.toString(), String.valueOf(orderId), streamKeyOf(voucherId)
         );
 
         int r = result.intValue();
 
         //  判断是否为 0
         if (r != 0) {
-            //  代表没有购买资格
-            return Result.fail(r == 1 ? "库存不足" : "不能重复下单哦~");
+            //  代表没有购买资格, 库存不足的话标记售罄, 并通知其他节点
+            if (r == 1) {
+                soldOutMarker.soldOut(voucherId);
+                return Result.fail("库存不足");
+            }
+            //  库存 key 不存在, 可能还没有加载, 不标记售罄
+            if (r == 3) {
+                log.warn("优惠券 {} 的库存还没有加载到 Redis", voucherId);
+                return Result.fail("秒杀尚未开始");
+            }
+            return Result.fail("不能重复下单哦~");
         }
 
-
-        proxy = (IVoucherOrderService) AopContext.currentProxy();
-
         //  返回订单 id
         return Result.ok(orderId);
 
@@ -271,7 +609,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         VoucherOrder voucherOrder = new VoucherOrder();
 
         //   2.2 获取本次订单的  id
-        long orderId = redisIdWorker.nextId("order");
+        long orderId = idGenerator.nextId("order");
         voucherOrder.setId(orderId);
 
         //   2.3 用户 id
@@ -316,4 +654,78 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         save(voucherOrder);
     }
 
+    /**
+     * 批量创建订单
+     * 按优惠券分组, 每个优惠券只执行一次 stock = stock - k, 最后一次性批量插入订单
+     *
+     * @param voucherOrders
+     */
+    @Override
+    @Transactional
+    public void createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        //  0. 幂等: 订单 id 由 IdGenerator 全局唯一生成, 已经落库的订单 (上次落库成功但没来得及 ACK) 直接跳过
+        Set<Long> orderIds = voucherOrders.stream().map(VoucherOrder::getId).collect(Collectors.toSet());
+        Set<Long> savedIds = query().select("id").in("id", orderIds).list()
+                .stream().map(VoucherOrder::getId).collect(Collectors.toSet());
+        if (!savedIds.isEmpty()) {
+            log.info("订单已经存在, 跳过: {}", savedIds);
+        }
+
+        //  1. 按优惠券分组
+        Map<Long, List<VoucherOrder>> ordersByVoucher = voucherOrders.stream()
+                .filter(voucherOrder -> !savedIds.contains(voucherOrder.getId()))
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, LinkedHashMap::new, Collectors.toList()));
+
+        List<VoucherOrder> toSave = new ArrayList<>(voucherOrders.size());
+        for (Map.Entry<Long, List<VoucherOrder>> entry : ordersByVoucher.entrySet()) {
+            Long voucherId = entry.getKey();
+
+            //  2. 一人一单: 先在批次内按用户去重, 再一次查询出已经下过单的用户
+            Map<Long, VoucherOrder> orderByUser = new LinkedHashMap<>();
+            for (VoucherOrder voucherOrder : entry.getValue()) {
+                orderByUser.putIfAbsent(voucherOrder.getUserId(), voucherOrder);
+            }
+            query().select("user_id")
+                    .eq("voucher_id", voucherId).in("user_id", orderByUser.keySet())
+                    .list()
+                    .forEach(order -> {
+                        log.error("用户已经购买过了, userId: {}", order.getUserId());
+                        orderByUser.remove(order.getUserId());
+                    });
+            if (orderByUser.isEmpty()) {
+                continue;
+            }
+            List<VoucherOrder> orders = new ArrayList<>(orderByUser.values());
+
+            //  3. 扣减库存 set stock = stock - k where voucher_id = ? and stock >= k
+            int k = orders.size();
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + k)
+                    .eq("voucher_id", voucherId).ge("stock", k)
+                    .update();
+            if (!success) {
+                //  3.1 库存不够整批扣减, 锁住库存行, 按剩余库存截取
+                SeckillVoucher seckillVoucher = seckillVoucherService.query()
+                        .eq("voucher_id", voucherId).last("FOR UPDATE").one();
+                int stock = seckillVoucher == null ? 0 : seckillVoucher.getStock();
+                if (stock <= 0) {
+                    log.error("库存不足, voucherId: {}, 丢弃订单数: {}", voucherId, k);
+                    continue;
+                }
+                orders = orders.subList(0, Math.min(stock, k));
+                seckillVoucherService.update()
+                        .setSql("stock = stock - " + orders.size())
+                        .eq("voucher_id", voucherId)
+                        .update();
+                log.error("库存不足, voucherId: {}, 丢弃订单数: {}", voucherId, k - orders.size());
+            }
+            toSave.addAll(orders);
+        }
+
+        //  4. 批量插入订单
+        if (!toSave.isEmpty()) {
+            saveBatch(toSave);
+        }
+    }
+
 }
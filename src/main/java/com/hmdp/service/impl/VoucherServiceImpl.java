@@ -7,6 +7,8 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.SoldOutMarker;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -14,6 +16,7 @@ import org.springframework.transaction.annotation.Transactional;
 import javax.annotation.Resource;
 import java.util.List;
 
+import static com.hmdp.utils.RedisConstants.CACHE_SECKILL_VOUCHER_KEY;
 import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
 
 /**
@@ -33,6 +36,12 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private SoldOutMarker soldOutMarker;
+
     @Override
     public Result queryVoucherOfShop(Long shopId) {
         // 查询优惠券信息
@@ -53,9 +62,11 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
+        cacheClient.addToBloomFilter(CACHE_SECKILL_VOUCHER_KEY, voucher.getId());
 
 //        //  添加优惠卷的时候, 同时保存到 Redis 中
 //        //  这个的作用是为了判断商品的剩余数量是否可以进行秒杀业务 key 为 seckill:stock: + 优惠卷 id, value 剩余的优惠卷数量
         stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY +voucher.getId(), voucher.getStock().toString());
+        soldOutMarker.clear(voucher.getId());
     }
 }
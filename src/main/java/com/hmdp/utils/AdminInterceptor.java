@@ -0,0 +1,41 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/19 10:40
+ * @Description: 运维接口拦截器, 请求头 X-Admin-Token 必须和 hmdp.admin.token 一致, 没有配置 token 时拒绝所有请求
+ */
+@Slf4j
+public class AdminInterceptor implements HandlerInterceptor {
+
+    public static final String ADMIN_TOKEN_HEADER = "X-Admin-Token";
+
+    //  这个类没有被 Spring 管理, 通过构造方法传入
+    private final byte[] adminToken;
+
+    public AdminInterceptor(String adminToken) {
+        this.adminToken = StrUtil.isBlank(adminToken) ? null : adminToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        String token = request.getHeader(ADMIN_TOKEN_HEADER);
+        //  用 MessageDigest.isEqual 比较, 耗时和内容无关, 防止通过响应时间猜 token
+        if (adminToken != null && token != null
+                && MessageDigest.isEqual(adminToken, token.getBytes(StandardCharsets.UTF_8))) {
+            return true;
+        }
+        log.warn("运维接口鉴权失败, uri: {}, ip: {}", request.getRequestURI(), request.getRemoteAddr());
+        response.setStatus(403);
+        return false;
+    }
+}
@@ -0,0 +1,449 @@
+package com.hmdp.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 21:10
+ * @Description: 紧凑的二进制序列化, 不写字段名, 字段按名字排序后依次写入, 数字用变长编码
+ * 格式: 版本号 (1 字节) + 标志位 (1 字节) + 数据, 数据超过阈值时用 Deflate 压缩
+ * 每个对象前面带 4 字节的字段签名, 实体的字段变了, 旧数据会解码失败, 当成缓存未命中重新加载
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+    /**
+     * 格式版本, 同时用来和 JSON 区分: JSON 的第一个字节一定是可见字符
+     */
+    public static final byte VERSION = 1;
+
+    private static final byte FLAG_DEFLATE = 1;
+
+    private static final int HEADER_LENGTH = 2;
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte STRING = 6;
+    private static final byte DATE_TIME = 7;
+    private static final byte OBJECT = 8;
+    private static final byte LIST = 9;
+
+    /**
+     * 数据超过这个字节数才压缩, 小于等于 0 表示不压缩
+     */
+    private final int compressThreshold;
+
+    private final Map<Class<?>, Schema> schemas = new ConcurrentHashMap<>();
+
+    public BinaryCacheCodec(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    public static boolean isBinary(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == VERSION;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        Output out = new Output();
+        out.write(VERSION);
+        out.write(0);
+        writeValue(out, value);
+
+        int length = out.size() - HEADER_LENGTH;
+        if (compressThreshold <= 0 || length <= compressThreshold) {
+            return out.toByteArray();
+        }
+
+        //  压缩后没有变小就不压缩了
+        byte[] compressed = deflate(out.buffer(), HEADER_LENGTH, length);
+        if (compressed.length + 5 >= length) {
+            return out.toByteArray();
+        }
+        Output zipped = new Output();
+        zipped.write(VERSION);
+        zipped.write(FLAG_DEFLATE);
+        zipped.writeVarLong(length);
+        zipped.write(compressed, 0, compressed.length);
+        return zipped.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        Input in = open(bytes);
+        return in == null ? null : type.cast(readOrNull(in, type, null));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> List<T> decodeList(byte[] bytes, Class<T> elementType) {
+        Input in = open(bytes);
+        return in == null ? null : (List<T>) readOrNull(in, List.class, elementType);
+    }
+
+    @Override
+    public RedisData decodeRedisData(byte[] bytes, Class<?> dataType) {
+        Input in = open(bytes);
+        return in == null ? null : (RedisData) readOrNull(in, RedisData.class, dataType);
+    }
+
+    private Object readOrNull(Input in, Class<?> type, Class<?> hint) {
+        try {
+            return readValue(in, type, hint);
+        } catch (IncompatibleException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 校验版本号, 需要的话解压
+     */
+    private Input open(byte[] bytes) {
+        if (!isBinary(bytes) || bytes.length <= HEADER_LENGTH) {
+            return null;
+        }
+        if ((bytes[1] & FLAG_DEFLATE) == 0) {
+            return new Input(bytes, HEADER_LENGTH);
+        }
+
+        Input header = new Input(bytes, HEADER_LENGTH);
+        int length = (int) header.readVarLong();
+        byte[] raw = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, header.pos, bytes.length - header.pos);
+            if (inflater.inflate(raw) != length) {
+                return null;
+            }
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+        return new Input(raw, 0);
+    }
+
+    private static byte[] deflate(byte[] buf, int offset, int length) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(buf, offset, length);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2);
+            byte[] chunk = new byte[1024];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // ------------------------------ 写 ------------------------------
+
+    private void writeValue(Output out, Object value) {
+        if (value == null) {
+            out.write(NULL);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer) {
+            out.write(INT);
+            out.writeVarLong(zigZag((Integer) value));
+        } else if (value instanceof Long) {
+            out.write(LONG);
+            out.writeVarLong(zigZag((Long) value));
+        } else if (value instanceof Double) {
+            out.write(DOUBLE);
+            out.writeFixedLong(Double.doubleToLongBits((Double) value));
+        } else if (value instanceof String) {
+            out.write(STRING);
+            byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            out.writeVarLong(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        } else if (value instanceof LocalDateTime) {
+            LocalDateTime time = (LocalDateTime) value;
+            out.write(DATE_TIME);
+            out.writeVarLong(zigZag(time.toEpochSecond(ZoneOffset.UTC)));
+            out.writeVarLong(time.getNano());
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.write(LIST);
+            out.writeVarLong(list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else {
+            Schema schema = schema(value.getClass());
+            out.write(OBJECT);
+            out.writeFixedInt(schema.signature);
+            try {
+                for (Field field : schema.fields) {
+                    writeValue(out, field.get(value));
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    // ------------------------------ 读 ------------------------------
+
+    /**
+     * @param type 目标类型
+     * @param hint 类型为 Object 的字段 (RedisData.data) 或者 List 元素的实际类型
+     */
+    private Object readValue(Input in, Class<?> type, Class<?> hint) {
+        byte tag = in.read();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+            case FALSE:
+                check(type, Boolean.class, boolean.class);
+                return tag == TRUE;
+            case INT:
+                check(type, Integer.class, int.class);
+                return (int) unZigZag(in.readVarLong());
+            case LONG:
+                check(type, Long.class, long.class);
+                return unZigZag(in.readVarLong());
+            case DOUBLE:
+                check(type, Double.class, double.class);
+                return Double.longBitsToDouble(in.readFixedLong());
+            case STRING:
+                check(type, String.class, String.class);
+                int length = (int) in.readVarLong();
+                String s = new String(in.buf, in.pos, length, StandardCharsets.UTF_8);
+                in.pos += length;
+                return s;
+            case DATE_TIME:
+                check(type, LocalDateTime.class, LocalDateTime.class);
+                long second = unZigZag(in.readVarLong());
+                return LocalDateTime.ofEpochSecond(second, (int) in.readVarLong(), ZoneOffset.UTC);
+            case LIST:
+                if (hint == null || !type.isAssignableFrom(ArrayList.class)) {
+                    throw IncompatibleException.INSTANCE;
+                }
+                int size = (int) in.readVarLong();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in, hint, null));
+                }
+                return list;
+            case OBJECT:
+                return readObject(in, type == Object.class ? hint : type, hint);
+            default:
+                throw IncompatibleException.INSTANCE;
+        }
+    }
+
+    private Object readObject(Input in, Class<?> type, Class<?> hint) {
+        if (type == null) {
+            throw IncompatibleException.INSTANCE;
+        }
+        Schema schema = schema(type);
+        if (in.readFixedInt() != schema.signature) {
+            throw IncompatibleException.INSTANCE;
+        }
+        try {
+            Object bean = schema.constructor.newInstance();
+            for (Field field : schema.fields) {
+                Object value = readValue(in, field.getType(), hint);
+                if (value != null) {
+                    field.set(bean, value);
+                }
+            }
+            return bean;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void check(Class<?> type, Class<?> boxed, Class<?> primitive) {
+        if (type != boxed && type != primitive && type != Object.class) {
+            throw IncompatibleException.INSTANCE;
+        }
+    }
+
+    // ------------------------------ 字段 ------------------------------
+
+    private Schema schema(Class<?> type) {
+        Schema schema = schemas.get(type);
+        if (schema == null) {
+            schema = schemas.computeIfAbsent(type, Schema::new);
+        }
+        return schema;
+    }
+
+    /**
+     * 一个实体类的字段列表, 按字段名排序, 不依赖反射返回字段的顺序
+     */
+    private static class Schema {
+        private final Field[] fields;
+        private final Constructor<?> constructor;
+
+        /**
+         * 字段名和字段类型的签名, 字段有变化时签名也会变
+         */
+        private final int signature;
+
+        private Schema(Class<?> type) {
+            if (type.isPrimitive() || type.isArray() || type.isEnum() || type.getName().startsWith("java.")) {
+                throw new IllegalArgumentException("不支持的缓存类型: " + type.getName());
+            }
+            List<Field> list = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                        continue;
+                    }
+                    checkFieldType(type, field);
+                    field.setAccessible(true);
+                    list.add(field);
+                }
+            }
+            list.sort(Comparator.comparing(Field::getName));
+
+            StringBuilder sb = new StringBuilder();
+            for (Field field : list) {
+                sb.append(field.getName()).append(':').append(field.getType().getName()).append(';');
+            }
+            this.fields = list.toArray(new Field[0]);
+            this.signature = sb.toString().hashCode();
+
+            try {
+                this.constructor = type.getDeclaredConstructor();
+                this.constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException("缓存类型没有无参构造方法: " + type.getName());
+            }
+        }
+
+        private static void checkFieldType(Class<?> owner, Field field) {
+            Class<?> t = field.getType();
+            boolean supported = t == Boolean.class || t == boolean.class
+                    || t == Integer.class || t == int.class
+                    || t == Long.class || t == long.class
+                    || t == Double.class || t == double.class
+                    || t == String.class || t == LocalDateTime.class
+                    || t == List.class || t == Object.class
+                    || !(t.isPrimitive() || t.isArray() || t.isEnum() || t.getName().startsWith("java."));
+            if (!supported) {
+                throw new IllegalArgumentException("不支持的字段类型: " + owner.getName() + "." + field.getName());
+            }
+        }
+    }
+
+    // ------------------------------ 编码 ------------------------------
+
+    private static long zigZag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    private static long unZigZag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static class Output extends ByteArrayOutputStream {
+
+        private Output() {
+            super(128);
+        }
+
+        private byte[] buffer() {
+            return buf;
+        }
+
+        private void writeVarLong(long n) {
+            while ((n & ~0x7FL) != 0) {
+                write((int) ((n & 0x7F) | 0x80));
+                n >>>= 7;
+            }
+            write((int) n);
+        }
+
+        private void writeFixedInt(int n) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                write(n >>> shift);
+            }
+        }
+
+        private void writeFixedLong(long n) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (n >>> shift));
+            }
+        }
+    }
+
+    private static class Input {
+        private final byte[] buf;
+        private int pos;
+
+        private Input(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        private byte read() {
+            if (pos >= buf.length) {
+                throw IncompatibleException.INSTANCE;
+            }
+            return buf[pos++];
+        }
+
+        private long readVarLong() {
+            long n = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = read();
+                n |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return n;
+                }
+            }
+            throw IncompatibleException.INSTANCE;
+        }
+
+        private int readFixedInt() {
+            int n = 0;
+            for (int i = 0; i < 4; i++) {
+                n = (n << 8) | (read() & 0xFF);
+            }
+            return n;
+        }
+
+        private long readFixedLong() {
+            long n = 0;
+            for (int i = 0; i < 8; i++) {
+                n = (n << 8) | (read() & 0xFF);
+            }
+            return n;
+        }
+    }
+
+    /**
+     * 数据和当前的类型对不上, 不需要堆栈
+     */
+    private static class IncompatibleException extends RuntimeException {
+        private static final IncompatibleException INSTANCE = new IncompatibleException();
+
+        private IncompatibleException() {
+            super("缓存数据格式不兼容", null, false, false);
+        }
+    }
+}
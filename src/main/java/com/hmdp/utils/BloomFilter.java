@@ -0,0 +1,68 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 17:10
+ * @Description: 进程内布隆过滤器, 按预计元素数和误判率计算位数组大小和哈希次数, 线程安全, 只能添加不能删除
+ * 判断不存在就一定不存在, 判断存在可能误判
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+
+    private final long bitSize;
+
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions 预计元素数
+     * @param fpp                期望误判率
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        long n = Math.max(1, expectedInsertions);
+        //  m = -n * ln(p) / (ln2)^2,  k = m / n * ln2
+        long m = (long) (-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.bitSize = Math.max(64, (m + 63) / 64 * 64);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / n * Math.log(2)));
+        this.bits = new AtomicLongArray((int) (bitSize / 64));
+    }
+
+    public void put(String value) {
+        long hash = MurmurHash.hash64(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitSize;
+            setBit(index);
+        }
+    }
+
+    public boolean mightContain(String value) {
+        long hash = MurmurHash.hash64(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitSize;
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setBit(long index) {
+        int i = (int) (index >>> 6);
+        long mask = 1L << index;
+        long old;
+        do {
+            old = bits.get(i);
+            if ((old & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(i, old, old | mask));
+    }
+}
@@ -0,0 +1,98 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.UserMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SECKILL_VOUCHER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_LIST_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_KEY;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 19:50
+ * @Description: 从数据库加载商铺, 博客, 用户, 秒杀券的 id 到 CacheClient 的布隆过滤器, 启动时加载, 之后定时重建
+ * 新增数据时由各个业务调用 CacheClient.addToBloomFilter 实时写入
+ */
+@Slf4j
+@Component
+public class CacheBloomFilterLoader {
+
+    /**
+     * 布隆过滤器的最小容量, 给两次重建之间新增的数据留出空间
+     */
+    private static final long MIN_EXPECTED_INSERTIONS = 100000;
+
+    private static final int BATCH_SIZE = 5000;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private BlogMapper blogMapper;
+
+    @Resource
+    private UserMapper userMapper;
+
+    @Resource
+    private SeckillVoucherMapper seckillVoucherMapper;
+
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${hmdp.cache.bloom-rebuild-interval-ms:3600000}",
+            initialDelayString = "${hmdp.cache.bloom-rebuild-interval-ms:3600000}")
+    public void rebuildAll() {
+        rebuild(shopMapper, "id", Arrays.asList(CACHE_SHOP_KEY, CACHE_SHOP_LIST_KEY));
+        rebuild(blogMapper, "id", Collections.singletonList(CACHE_BLOG_KEY));
+        rebuild(userMapper, "id", Collections.singletonList(CACHE_USER_KEY));
+        rebuild(seckillVoucherMapper, "voucher_id", Collections.singletonList(CACHE_SECKILL_VOUCHER_KEY));
+    }
+
+    /**
+     * 按 id 游标分批读取所有 id, 只查 id 一列
+     *
+     * @param mapper
+     * @param idColumn
+     * @param keyPrefixes
+     * @param <T>
+     */
+    private <T> void rebuild(BaseMapper<T> mapper, String idColumn, List<String> keyPrefixes) {
+        try {
+            long count = mapper.selectCount(null);
+            cacheClient.rebuildBloomFilter(keyPrefixes, Math.max(MIN_EXPECTED_INSERTIONS, count * 2), sink -> {
+                long cursor = 0;
+                while (true) {
+                    List<Object> ids = mapper.selectObjs(new QueryWrapper<T>()
+                            .select(idColumn)
+                            .gt(idColumn, cursor)
+                            .orderByAsc(idColumn)
+                            .last("LIMIT " + BATCH_SIZE));
+                    ids.forEach(sink);
+                    if (ids.size() < BATCH_SIZE) {
+                        break;
+                    }
+                    cursor = Long.parseLong(ids.get(ids.size() - 1).toString());
+                }
+            });
+            log.info("布隆过滤器加载完成: {}, 共 {} 个 id", keyPrefixes, count);
+        } catch (Exception e) {
+            log.error("布隆过滤器加载失败: {}", keyPrefixes, e);
+        }
+    }
+}
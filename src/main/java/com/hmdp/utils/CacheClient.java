@@ -1,19 +1,25 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
 import com.hmdp.entity.Shop;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static com.hmdp.utils.RedisConstants.*;
@@ -30,8 +36,92 @@ public class CacheClient {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
-    //  线程池
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    @Resource
+    private LocalCache localCache;
+
+    @Resource
+    private SingleFlight singleFlight;
+
+    @Resource
+    private CacheCodec cacheCodec;
+
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
+
+    /**
+     * 提前刷新 (XFetch) 的系数, 越大越早刷新, 0 表示关闭, 只在逻辑过期后才重建
+     */
+    @Value("${hmdp.cache.xfetch-beta:1.0}")
+    private double xfetchBeta;
+
+    /**
+     * 布隆过滤器的误判率
+     */
+    private static final double BLOOM_FPP = 0.01;
+
+    /**
+     * key 前缀 -> 布隆过滤器, 多个前缀可以共用一个 (比如商铺详情和商铺列表)
+     */
+    private final Map<String, BloomGuard> bloomGuards = new ConcurrentHashMap<>();
+
+    /**
+     * 重建某类数据的布隆过滤器, 重建期间新增的 id 会同时写入新旧两个过滤器, 不会丢失
+     *
+     * @param keyPrefixes        共用这个过滤器的 key 前缀, 第一个为主前缀
+     * @param expectedInsertions 预计的 id 数量
+     * @param loader             把数据库中所有的 id 交给传入的 Consumer
+     */
+    public void rebuildBloomFilter(List<String> keyPrefixes, long expectedInsertions, Consumer<Consumer<Object>> loader) {
+        BloomGuard guard = bloomGuards.computeIfAbsent(keyPrefixes.get(0), k -> new BloomGuard());
+        BloomFilter building = new BloomFilter(expectedInsertions, BLOOM_FPP);
+        guard.building = building;
+        try {
+            loader.accept(id -> building.put(id.toString()));
+            guard.current = building;
+        } finally {
+            guard.building = null;
+        }
+        for (String keyPrefix : keyPrefixes) {
+            bloomGuards.putIfAbsent(keyPrefix, guard);
+        }
+    }
+
+    /**
+     * 新增数据后调用, 写入本节点的布隆过滤器, 并广播给所有节点
+     *
+     * @param keyPrefix
+     * @param id
+     */
+    public void addToBloomFilter(String keyPrefix, Object id) {
+        markBloomFilter(keyPrefix, id.toString());
+        stringRedisTemplate.convertAndSend(CACHE_BLOOM_ADD_CHANNEL, keyPrefix + "," + id);
+    }
+
+    /**
+     * 只写入本节点的布隆过滤器 (收到其他节点的广播时调用)
+     *
+     * @param keyPrefix
+     * @param id
+     */
+    public void markBloomFilter(String keyPrefix, String id) {
+        BloomGuard guard = bloomGuards.get(keyPrefix);
+        if (guard != null) {
+            guard.put(id);
+        }
+    }
+
+    /**
+     * 布隆过滤器判断 id 一定不存在, 没有过滤器 (还没加载完) 时放行
+     */
+    private boolean definitelyAbsent(String keyPrefix, Object id) {
+        BloomGuard guard = bloomGuards.get(keyPrefix);
+        return guard != null && guard.definitelyAbsent(id.toString());
+    }
+
+    private boolean hasBloomFilter(String keyPrefix) {
+        BloomGuard guard = bloomGuards.get(keyPrefix);
+        return guard != null && guard.current != null;
+    }
 
 
 
@@ -44,8 +134,33 @@ public class CacheClient {
      * @param unit
      */
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        //  这里将 Object 对象转化为 JSON 格式
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        setRaw(key, cacheCodec.encode(value), Expiration.from(time, unit));
+    }
+
+    /**
+     * 写入缓存, 不过期
+     *
+     * @param key
+     * @param value
+     */
+    public void set(String key, Object value) {
+        setRaw(key, cacheCodec.encode(value), Expiration.persistent());
+    }
+
+    /**
+     * 查询列表缓存
+     *
+     * @param key
+     * @param elementType
+     * @param <R>
+     * @return 未命中或者无法解码时返回 null
+     */
+    public <R> List<R> getList(String key, Class<R> elementType) {
+        byte[] bytes = getRaw(key);
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        return cacheCodec.decodeList(bytes, elementType);
     }
 
     /**
@@ -57,15 +172,87 @@ public class CacheClient {
      * @param unit
      */
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
+        setWithLogicalExpire(key, value, time, unit, null);
+    }
+
+    /**
+     * 设置逻辑过期时间, 同时记录这次重建花费的时间
+     *
+     * @param key
+     * @param value
+     * @param time
+     * @param unit
+     * @param delta 重建耗时 (毫秒)
+     */
+    public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit, Long delta) {
         //  设置逻辑过期时间, 这里咱们要新 new 一个 RedisData 对象, 来封装逻辑过期时间
         RedisData redisData = new RedisData();
         redisData.setData(value);
+        redisData.setDelta(delta);
         //  将时间的单位转化
         redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
 
         //  写入 Redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        setRaw(key, cacheCodec.encode(redisData), Expiration.persistent());
 
+        //  本节点的一级缓存直接换成新数据
+        putLocalWithLogicalExpire(key, redisData);
+    }
+
+    /**
+     * 预热用的批量写入 (管道), 只写入 Redis 中还不存在的 key, 不会覆盖业务已经写入的数据
+     * 过期时间加上最多 1/10 的随机值, 防止预热的数据在同一时刻一起过期
+     *
+     * @param keyPrefix
+     * @param values        id -> 数据
+     * @param time
+     * @param unit
+     * @param logicalExpire true 写成 RedisData 逻辑过期格式, false 写成带 TTL 的普通缓存
+     * @return 实际写入的数量
+     */
+    public int setBatchIfAbsent(String keyPrefix, Map<?, ?> values, Long time, TimeUnit unit, boolean logicalExpire) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        long seconds = unit.toSeconds(time);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<?, ?> entry : values.entrySet()) {
+                long ttl = seconds + ThreadLocalRandom.current().nextLong(seconds / 10 + 1);
+                byte[] value;
+                Expiration expiration;
+                if (logicalExpire) {
+                    RedisData redisData = new RedisData();
+                    redisData.setData(entry.getValue());
+                    redisData.setExpireTime(LocalDateTime.now().plusSeconds(ttl));
+                    value = cacheCodec.encode(redisData);
+                    expiration = Expiration.persistent();
+                } else {
+                    value = cacheCodec.encode(entry.getValue());
+                    expiration = Expiration.seconds(ttl);
+                }
+                connection.set(rawKey(keyPrefix + entry.getKey()), value, expiration, RedisStringCommands.SetOption.ifAbsent());
+            }
+            return null;
+        });
+
+        int written = 0;
+        for (Object result : results) {
+            if (Boolean.TRUE.equals(result)) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * 删除缓存, 同时广播给所有节点, 让它们删除自己的一级缓存
+     *
+     * @param key
+     */
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        localCache.invalidate(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
     }
 
 
@@ -84,19 +271,43 @@ public class CacheClient {
      */
     public <R, ID> R queryWithPassThrough(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        //  布隆过滤器判断不存在, 一定不存在, Redis 和数据库都不用查
+        if (definitelyAbsent(keyPrefix, id)) {
+            return null;
+        }
+
+        String key = keyPrefix + id;
+
+        //  0. 先查本地缓存, 命中的话连 Redis 都不用访问
+        Object local = localCache.get(key);
+        if (local != null) {
+            return local == LocalCache.NULL_VALUE ? null : type.cast(local);
+        }
+
+        //  1. 本地缓存未命中, 同一个 key 只让一个线程去查 Redis 和数据库, 其他线程等待结果
+        return singleFlight.execute(key, () -> loadWithPassThrough(keyPrefix, id, type, dbFallback, time, unit));
+    }
+
+    private <R, ID> R loadWithPassThrough(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
 
         //  1. 从 Redis 中查询店铺信息
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getRaw(key);
 
         //  2. Redis 中存在店铺信息
-        if (StrUtil.isNotBlank(json)) {
-            //  3. 查询到结果, 直接返回
-            return JSONUtil.toBean(json, type);
+        if (bytes != null && bytes.length > 0) {
+            //  3. 查询到结果, 放入本地缓存后返回 (无法解码的旧数据当成未命中)
+            R r = cacheCodec.decode(bytes, type);
+            if (r != null) {
+                localCache.put(key, r, CACHE_LOCAL_TTL, TimeUnit.SECONDS);
+                return r;
+            }
         }
 
-        //  不为 null 的话, 那么就是 "", 说明这个数据在数据库中不存在, 直接返回错误信息
-        if (json != null) {
+        //  长度为 0 的话, 那么就是 "", 说明这个数据在数据库中不存在, 直接返回错误信息
+        if (bytes != null && bytes.length == 0) {
+            localCache.put(key, null, CACHE_LOCAL_TTL, TimeUnit.SECONDS);
             return null;
         }
 
@@ -106,19 +317,134 @@ public class CacheClient {
         if (r == null) {
 
             //  解决缓存穿透问题, 添加空值                  //  过期时间可以设置的快一点
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            //  有布隆过滤器时, 能走到这里的只有误判的 id, 只在本地缓存空值, 不再往 Redis 写空值 key
+            if (!hasBloomFilter(keyPrefix)) {
+                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            }
+            localCache.put(key, null, CACHE_LOCAL_TTL, TimeUnit.SECONDS);
             //  5. 数据库中没有结果, 返回异常信息
             return null;
         }
 
         //  数据库存在数据, 将数据加入缓存
         this.set(key, r, time, unit);
+        localCache.put(key, r, Math.min(CACHE_LOCAL_TTL, unit.toSeconds(time)), TimeUnit.SECONDS);
 
         //  7. 返回数据给前端
         return r;
     }
 
 
+    /**
+     * 批量查询, 解决缓存穿透问题
+     * 一次 MGET 查询 Redis, 未命中的 id 一次性交给数据库 (IN 查询), 最后用管道批量写回 Redis (包括空值)
+     *
+     * @param keyPrefix
+     * @param ids
+     * @param type
+     * @param dbFallback 根据 id 集合批量查询数据库, 返回 id -> 数据, 不存在的 id 不放入 Map 即可
+     * @param time
+     * @param unit
+     * @param <R>
+     * @param <ID>
+     * @return 按 ids 顺序排列的 id -> 数据, 不存在的数据不会出现在结果中
+     */
+    public <R, ID> Map<ID, R> queryBatchWithPassThrough(
+            String keyPrefix, Collection<ID> ids, Class<R> type,
+            Function<Collection<ID>, Map<ID, R>> dbFallback, Long time, TimeUnit unit) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        //  去重, 同时保留原有顺序, 布隆过滤器判断不存在的直接去掉
+        Set<ID> idSet = new LinkedHashSet<>(ids);
+        idSet.removeIf(id -> definitelyAbsent(keyPrefix, id));
+        Map<ID, R> found = new HashMap<>(idSet.size());
+
+        //  1. 先查本地缓存
+        List<ID> redisIds = new ArrayList<>(idSet.size());
+        for (ID id : idSet) {
+            Object local = localCache.get(keyPrefix + id);
+            if (local == null) {
+                redisIds.add(id);
+            } else if (local != LocalCache.NULL_VALUE) {
+                found.put(id, type.cast(local));
+            }
+        }
+
+        //  2. 本地缓存未命中的, 一次 MGET 从 Redis 中查询
+        List<ID> missIds = new ArrayList<>();
+        if (!redisIds.isEmpty()) {
+            byte[][] keys = new byte[redisIds.size()][];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = rawKey(keyPrefix + redisIds.get(i));
+            }
+            List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) c -> c.mGet(keys));
+
+            for (int i = 0; i < redisIds.size(); i++) {
+                ID id = redisIds.get(i);
+                byte[] bytes = values == null ? null : values.get(i);
+                R r = bytes == null || bytes.length == 0 ? null : cacheCodec.decode(bytes, type);
+                if (r != null) {
+                    found.put(id, r);
+                    localCache.put(keyPrefix + id, r, CACHE_LOCAL_TTL, TimeUnit.SECONDS);
+                } else if (bytes != null && bytes.length == 0) {
+                    //  "" 空值, 说明数据库中不存在
+                    localCache.put(keyPrefix + id, null, CACHE_LOCAL_TTL, TimeUnit.SECONDS);
+                } else {
+                    //  未命中, 或者无法解码
+                    missIds.add(id);
+                }
+            }
+        }
+
+        //  3. Redis 也未命中的, 一次性查询数据库, 再通过管道写回 Redis
+        if (!missIds.isEmpty()) {
+            Map<ID, R> dbMap = dbFallback.apply(missIds);
+            Map<ID, R> loaded = dbMap == null ? Collections.emptyMap() : dbMap;
+            boolean guarded = hasBloomFilter(keyPrefix);
+
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (ID id : missIds) {
+                    R r = loaded.get(id);
+                    if (r == null) {
+                        if (guarded) {
+                            //  有布隆过滤器时只在本地缓存空值
+                            continue;
+                        }
+                        //  解决缓存穿透问题, 添加空值
+                        connection.set(rawKey(keyPrefix + id), new byte[0],
+                                Expiration.from(CACHE_NULL_TTL, TimeUnit.MINUTES), RedisStringCommands.SetOption.upsert());
+                    } else {
+                        connection.set(rawKey(keyPrefix + id), cacheCodec.encode(r),
+                                Expiration.from(time, unit), RedisStringCommands.SetOption.upsert());
+                    }
+                }
+                return null;
+            });
+
+            long localTtl = Math.min(CACHE_LOCAL_TTL, unit.toSeconds(time));
+            for (ID id : missIds) {
+                R r = loaded.get(id);
+                localCache.put(keyPrefix + id, r, r == null ? CACHE_LOCAL_TTL : localTtl, TimeUnit.SECONDS);
+                if (r != null) {
+                    found.put(id, r);
+                }
+            }
+        }
+
+        //  4. 按照传入的顺序返回
+        Map<ID, R> result = new LinkedHashMap<>(found.size());
+        for (ID id : idSet) {
+            R r = found.get(id);
+            if (r != null) {
+                result.put(id, r);
+            }
+        }
+        return result;
+    }
+
+
     /**
      * 使用逻辑过期解决缓存击穿问题
      *
@@ -134,63 +460,172 @@ public class CacheClient {
      */
     public <R, ID> R queryWithLogicalExpire(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        if (definitelyAbsent(keyPrefix, id)) {
+            return null;
+        }
+
         String key = keyPrefix + id;
 
+        //  0. 先查本地缓存, 本地缓存的有效期不会超过逻辑过期时间, 所以命中的一定是未过期的数据
+        //  但是快过期了的话, 也可能需要提前刷新
+        Object local = localCache.get(key);
+        if (local != null) {
+            RedisData redisData = (RedisData) local;
+            if (shouldRefreshEarly(redisData)) {
+                rebuildAsync(key, id, type, redisData.getExpireTime(), dbFallback, time, unit);
+            }
+            return type.cast(redisData.getData());
+        }
+
         //  1. 从 Redis 中查询店铺信息
-        String cacheShop = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getRaw(key);
 
-        //  2. Redis 不存在店铺信息, 这个适用于秒杀, 我们一般提前放入商品并且添加逻辑过期时间
-        if (StrUtil.isBlank(cacheShop)) {
-            return null;
+        //  2. 命中, 反序列化为 Java 对象, 判断是否逻辑过期
+        RedisData redisData = bytes == null || bytes.length == 0 ? null : cacheCodec.decodeRedisData(bytes, type);
+
+        //  3. Redis 中不存在 (没有预热到, 或者更新后被删除了), 或者无法解码 (格式或字段变了)
+        //  没有旧数据可以返回, 只能同步加载, 同一个 key 本节点只查一次数据库
+        if (redisData == null) {
+            return singleFlight.execute(key, () -> loadWithLogicalExpire(key, id, type, dbFallback, time, unit));
         }
+        R r = type.cast(redisData.getData());
 
-        //  4. 命中, 需要将 json 反序列化为 Java 对象, 判断是否逻辑过期
-        RedisData redisData = JSONUtil.toBean(cacheShop, RedisData.class);
-        JSONObject data = (JSONObject) redisData.getData();
-        R r = JSONUtil.toBean(data, type);
+        //  4. 未过期, 放入本地缓存
+        if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+            putLocalWithLogicalExpire(key, redisData);
+        }
 
-        LocalDateTime expireTime = redisData.getExpireTime();
+        //  5. 已经过期, 或者按概率需要提前刷新, 异步重建缓存
+        if (shouldRefreshEarly(redisData)) {
+            rebuildAsync(key, id, type, redisData.getExpireTime(), dbFallback, time, unit);
+        }
 
-        //  5. 判断是否过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
-            log.info("未过期, 返回店铺信息");
-            return r;
+        //  6. 不管有没有重建, 都直接返回当前的数据 (可能是旧数据)
+        return r;
+    }
+
+    /**
+     * 同步加载逻辑过期的缓存, 先再查一次 Redis, 可能刚刚被别的线程或节点写入了
+     */
+    private <R, ID> R loadWithLogicalExpire(
+            String key, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        byte[] bytes = getRaw(key);
+        RedisData redisData = bytes == null || bytes.length == 0 ? null : cacheCodec.decodeRedisData(bytes, type);
+        if (redisData != null) {
+            return type.cast(redisData.getData());
         }
 
+        long begin = System.nanoTime();
+        R r = dbFallback.apply(id);
+        if (r != null) {
+            long delta = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+            setWithLogicalExpire(key, r, time, unit, Math.max(delta, 1));
+        }
+        return r;
+    }
+
+    /**
+     * XFetch 提前刷新: now - delta * beta * ln(random) >= expireTime 时刷新
+     * 重建越慢 (delta 越大), 越接近过期, 刷新的概率越大, 热点 key 基本在过期前就会被某个请求刷新掉
+     * 已经过期的数据一定刷新
+     *
+     * @param redisData
+     * @return
+     */
+    private boolean shouldRefreshEarly(RedisData redisData) {
+        long now = System.currentTimeMillis();
+        long expireAt = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (now >= expireAt) {
+            return true;
+        }
+        Long delta = redisData.getDelta();
+        if (delta == null || delta <= 0 || xfetchBeta <= 0) {
+            return false;
+        }
+        //  1 - nextDouble() 的取值范围是 (0, 1], 避免 ln(0)
+        double gap = -delta * xfetchBeta * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+        return now + gap >= expireAt;
+    }
 
-        //  5.2 过期
-        //  6. 缓存重建
-        //  6.1 尝试获取 互斥锁
+    /**
+     * 获取互斥锁后异步重建缓存, 抢不到锁或者线程池满了就放弃, 调用方继续使用旧数据
+     *
+     * @param seenExpireTime 调用方看到的逻辑过期时间, 可能来自本地缓存, 比 Redis 中的旧
+     */
+    private <R, ID> void rebuildAsync(String key, ID id, Class<R> type, LocalDateTime seenExpireTime,
+                                      Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String lockKey = LOCK_SHOP_KEY + id;
-        boolean isLock = tryLocal(lockKey);
-        //  6.2 成功, 开启一个线程, 进行缓存重建
+        if (!tryLocal(lockKey)) {
+            return;
+        }
 
+        boolean submitted = cacheRebuildExecutor.trySubmit(() -> {
+            try {
+                //  拿到锁之后再查一次 Redis, 别的节点已经刷新过的话 (过期时间比看到的新), 只更新本地缓存, 不再查数据库
+                byte[] bytes = getRaw(key);
+                RedisData current = bytes == null || bytes.length == 0 ? null : cacheCodec.decodeRedisData(bytes, type);
+                if (current != null && current.getExpireTime().isAfter(seenExpireTime)) {
+                    putLocalWithLogicalExpire(key, current);
+                    return;
+                }
 
+                //  从数据库查询, 记录重建耗时
+                long begin = System.nanoTime();
+                R newR = dbFallback.apply(id);
+                long delta = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+                //  重建缓存
+                this.setWithLogicalExpire(key, newR, time, unit, Math.max(delta, 1));
+            } finally {
+                unlock(lockKey);
+            }
+        });
+        if (!submitted) {
+            unlock(lockKey);
+        }
+    }
 
-        if (isLock) {
-            log.info("获取互斥锁成功, 进行缓存重建.....");
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
+    private static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
 
-                try {
-                    log.info("开启新线程重建缓存");
+    private byte[] getRaw(String key) {
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) c -> c.get(rawKey(key)));
+    }
 
-                    Thread.sleep(100);
+    private void setRaw(String key, byte[] value, Expiration expiration) {
+        stringRedisTemplate.execute((RedisCallback<Boolean>) c ->
+                c.set(rawKey(key), value, expiration, RedisStringCommands.SetOption.upsert()));
+    }
 
-                    //  从数据库查询
-                    R newR = dbFallback.apply(id);
-                    //  重建缓存
-                    this.setWithLogicalExpire(key, newR, time, unit);
+    //  写入本地缓存, 有效期取 本地缓存最大有效期 和 距离逻辑过期剩余时间 中较小的那个
+    private void putLocalWithLogicalExpire(String key, RedisData redisData) {
+        long remain = Duration.between(LocalDateTime.now(), redisData.getExpireTime()).getSeconds();
+        localCache.put(key, redisData, Math.min(CACHE_LOCAL_TTL, remain), TimeUnit.SECONDS);
+    }
 
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    unlock(lockKey);
-                }
-            });
+    /**
+     * 布隆过滤器, 重建期间同时写入正在构建的过滤器
+     */
+    private static class BloomGuard {
+        private volatile BloomFilter current;
+        private volatile BloomFilter building;
+
+        private void put(String id) {
+            //  先读 building 再读 current, 和重建时 先设置 current 再清空 building 的顺序相反, 保证新过滤器不会漏掉
+            BloomFilter b = building;
+            if (b != null) {
+                b.put(id);
+            }
+            BloomFilter c = current;
+            if (c != null) {
+                c.put(id);
+            }
+        }
+
+        private boolean definitelyAbsent(String id) {
+            BloomFilter c = current;
+            return c != null && !c.mightContain(id);
         }
-        log.info("返回旧数据.....");
-        //  6.3 成功, 未成功, 直接返回旧数据
-        return r;
     }
 
     //  获取互斥锁
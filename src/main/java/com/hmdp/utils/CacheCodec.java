@@ -0,0 +1,33 @@
+package com.hmdp.utils;
+
+import java.util.List;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 21:10
+ * @Description: 缓存数据的序列化方式
+ * decode 返回 null 表示这条数据无法解码 (格式版本或者实体字段变了), 调用方当成缓存未命中处理
+ */
+public interface CacheCodec {
+
+    /**
+     * 序列化, 支持实体对象, List 和 RedisData
+     *
+     * @param value
+     * @return
+     */
+    byte[] encode(Object value);
+
+    <T> T decode(byte[] bytes, Class<T> type);
+
+    <T> List<T> decodeList(byte[] bytes, Class<T> elementType);
+
+    /**
+     * 反序列化逻辑过期的数据, data 直接解码成 dataType
+     *
+     * @param bytes
+     * @param dataType
+     * @return
+     */
+    RedisData decodeRedisData(byte[] bytes, Class<?> dataType);
+}
@@ -0,0 +1,105 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 20:40
+ * @Description: 缓存重建线程池, 线程数和队列长度都有上限
+ * 队列满了直接拒绝, 调用方继续返回旧数据, 不会让重建任务无限堆积 (背压)
+ */
+@Slf4j
+@Component
+public class CacheRebuildExecutor {
+
+    @Value("${hmdp.cache.rebuild.threads:4}")
+    private int threads;
+
+    @Value("${hmdp.cache.rebuild.queue-capacity:256}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalCostMillis = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        AtomicInteger index = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "cache-rebuild-" + index.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 提交重建任务
+     *
+     * @param task
+     * @return false 表示队列已满, 任务被丢弃, 调用方需要自己释放已经拿到的锁
+     */
+    public boolean trySubmit(Runnable task) {
+        try {
+            executor.execute(() -> {
+                long begin = System.nanoTime();
+                try {
+                    task.run();
+                    succeeded.increment();
+                } catch (Exception e) {
+                    failed.increment();
+                    log.error("缓存重建失败", e);
+                } finally {
+                    totalCostMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+                }
+            });
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            log.warn("缓存重建队列已满, 丢弃本次重建");
+            return false;
+        }
+    }
+
+    /**
+     * 线程池运行指标
+     *
+     * @return
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long done = succeeded.sum() + failed.sum();
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("submitted", submitted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("succeeded", succeeded.sum());
+        stats.put("failed", failed.sum());
+        stats.put("avgCostMillis", done == 0 ? 0 : totalCostMillis.sum() / done);
+        return stats;
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,276 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.ShopTypeMapper;
+import com.hmdp.service.IShopService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 21:50
+ * @Description: 缓存预热: 热门商铺, 商铺类型, 进行中的秒杀券, 商铺地理索引
+ * 启动时在 ApplicationRunner 中同步执行, 执行完之前应用不会进入 ACCEPTING_TRAFFIC 状态; 也可以通过 /cache/warm-up 手动触发
+ * 只写入 Redis 中还不存在的 key, 不会覆盖业务已经写入的数据
+ */
+@Slf4j
+@Component
+public class CacheWarmer implements ApplicationRunner {
+
+    @Value("${hmdp.cache.warm-up.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 预热评论数最多的前 N 个商铺
+     */
+    @Value("${hmdp.cache.warm-up.hot-shop-limit:10000}")
+    private int hotShopLimit;
+
+    /**
+     * 每批查询数据库和管道写入 Redis 的数量
+     */
+    @Value("${hmdp.cache.warm-up.batch-size:500}")
+    private int batchSize;
+
+    @Value("${hmdp.cache.warm-up.threads:4}")
+    private int threads;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private ShopTypeMapper shopTypeMapper;
+
+    @Resource
+    private SeckillVoucherMapper seckillVoucherMapper;
+
+    @Resource
+    private IShopService shopService;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * 最近一次预热的进度, 任务名 -> 进度
+     */
+    private volatile Map<String, Progress> progress = Collections.emptyMap();
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+        //  启动时地理索引已经在 ShopServiceImpl 初始化时加载过了, 不用再加载一次
+        doWarmUp(false);
+    }
+
+    /**
+     * 手动触发一次预热, 在后台线程中执行, 进度通过 status 查看
+     *
+     * @param reloadGeo 是否重建商铺地理索引
+     * @return false 表示上一次预热还没有结束
+     */
+    public boolean trigger(boolean reloadGeo) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = new Thread(() -> doWarmUp(reloadGeo), "cache-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * 预热进度
+     *
+     * @return
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", running.get());
+        Map<String, Object> tasks = new LinkedHashMap<>();
+        progress.forEach((name, p) -> tasks.put(name, p.toMap()));
+        status.put("tasks", tasks);
+        return status;
+    }
+
+    private void doWarmUp(boolean reloadGeo) {
+        long begin = System.currentTimeMillis();
+        AtomicInteger index = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "cache-warm-up-" + index.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            Map<String, Progress> current = new LinkedHashMap<>();
+            Progress shops = new Progress();
+            Progress shopTypes = new Progress();
+            Progress vouchers = new Progress();
+            current.put("shop", shops);
+            current.put("shopType", shopTypes);
+            current.put("seckillVoucher", vouchers);
+            Progress geo = null;
+            if (reloadGeo) {
+                geo = new Progress();
+                current.put("shopGeo", geo);
+            }
+            progress = current;
+
+            //  1. 数据量小的任务先提交, 和下面查询热门商铺 id 并行
+            List<Future<?>> futures = new ArrayList<>();
+            futures.add(submit(pool, shopTypes, () -> warmUpShopTypes(shopTypes)));
+            futures.add(submit(pool, vouchers, () -> warmUpSeckillVouchers(vouchers)));
+            if (geo != null) {
+                futures.add(submit(pool, geo, shopService::reloadGeoIndex));
+            }
+
+            //  2. 热门商铺, 按批并行写入, 提交期间占一个计数, 防止前面的批次先执行完被当成整个任务结束
+            shops.pending.incrementAndGet();
+            try {
+                for (List<Long> batch : hotShopIdBatches(shops)) {
+                    futures.add(submit(pool, shops, () -> warmUpShops(shops, batch)));
+                }
+            } catch (Exception e) {
+                shops.failed.incrementAndGet();
+                log.error("查询热门商铺失败", e);
+            } finally {
+                shops.finishOne();
+            }
+
+            //  3. 等待所有任务结束
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            log.info("缓存预热完成, 耗时 {} ms, {}", System.currentTimeMillis() - begin, status().get("tasks"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("缓存预热失败", e);
+        } finally {
+            pool.shutdownNow();
+            running.set(false);
+        }
+    }
+
+    /**
+     * 提交一批任务, 这个任务的所有批次都结束时记录耗时
+     */
+    private Future<?> submit(ExecutorService pool, Progress p, Runnable task) {
+        p.pending.incrementAndGet();
+        return pool.submit(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                p.failed.incrementAndGet();
+                log.error("缓存预热任务失败", e);
+            } finally {
+                p.finishOne();
+            }
+        });
+    }
+
+    private List<List<Long>> hotShopIdBatches(Progress p) {
+        List<Object> ids = shopMapper.selectObjs(new QueryWrapper<Shop>()
+                .select("id")
+                .orderByDesc("comments")
+                .last("LIMIT " + hotShopLimit));
+        p.total.set(ids.size());
+
+        List<List<Long>> batches = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += batchSize) {
+            batches.add(ids.subList(i, Math.min(i + batchSize, ids.size())).stream()
+                    .map(id -> Long.valueOf(id.toString()))
+                    .collect(Collectors.toList()));
+        }
+        return batches;
+    }
+
+    /**
+     * 商铺详情 (逻辑过期) 和商铺列表 (普通 TTL) 两份缓存
+     */
+    private void warmUpShops(Progress p, List<Long> ids) {
+        Map<Long, Shop> shops = shopMapper.selectBatchIds(ids).stream()
+                .collect(Collectors.toMap(Shop::getId, Function.identity()));
+        p.loaded.addAndGet(shops.size());
+        p.written.addAndGet(cacheClient.setBatchIfAbsent(CACHE_SHOP_KEY, shops, CACHE_SHOP_TTL, TimeUnit.MINUTES, true));
+        p.written.addAndGet(cacheClient.setBatchIfAbsent(CACHE_SHOP_LIST_KEY, shops, CACHE_SHOP_TTL, TimeUnit.MINUTES, false));
+    }
+
+    private void warmUpShopTypes(Progress p) {
+        List<ShopType> types = shopTypeMapper.selectList(new QueryWrapper<ShopType>().orderByAsc("sort"));
+        p.total.set(types.size());
+        p.loaded.set(types.size());
+        cacheClient.set(SHOP_TYPE_KEY, types);
+        p.written.set(1);
+    }
+
+    /**
+     * 只预热还没有结束的秒杀券, 库存 key 是秒杀的权威数据, 这里不动
+     */
+    private void warmUpSeckillVouchers(Progress p) {
+        List<SeckillVoucher> vouchers = seckillVoucherMapper.selectList(new QueryWrapper<SeckillVoucher>()
+                .gt("end_time", LocalDateTime.now()));
+        p.total.set(vouchers.size());
+        for (int i = 0; i < vouchers.size(); i += batchSize) {
+            Map<Long, SeckillVoucher> batch = vouchers.subList(i, Math.min(i + batchSize, vouchers.size())).stream()
+                    .collect(Collectors.toMap(SeckillVoucher::getVoucherId, Function.identity()));
+            p.loaded.addAndGet(batch.size());
+            p.written.addAndGet(cacheClient.setBatchIfAbsent(
+                    CACHE_SECKILL_VOUCHER_KEY, batch, CACHE_SECKILL_VOUCHER_TTL, TimeUnit.MINUTES, false));
+        }
+    }
+
+    /**
+     * 一个预热任务的进度
+     */
+    private static class Progress {
+        private final long startedAt = System.currentTimeMillis();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong loaded = new AtomicLong();
+        private final AtomicLong written = new AtomicLong();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile long costMillis = -1;
+
+        private void finishOne() {
+            if (pending.decrementAndGet() == 0) {
+                costMillis = System.currentTimeMillis() - startedAt;
+            }
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("status", costMillis < 0 ? "running" : failed.get() > 0 ? "failed" : "done");
+            map.put("total", total.get());
+            map.put("loaded", loaded.get());
+            map.put("written", written.get());
+            map.put("failedBatches", failed.get());
+            map.put("costMillis", costMillis < 0 ? System.currentTimeMillis() - startedAt : costMillis);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 21:10
+ * @Description: 按配置选择写入的格式, 读取时根据第一个字节自动识别, 两种格式的数据可以同时存在
+ * 从 json 切换到 binary 时, 先让所有节点升级到能识别两种格式的版本, 再打开 binary
+ */
+@Slf4j
+@Component
+public class DelegatingCacheCodec implements CacheCodec {
+
+    /**
+     * json / binary
+     */
+    @Value("${hmdp.cache.codec:json}")
+    private String codec;
+
+    @Value("${hmdp.cache.compress-threshold:1024}")
+    private int compressThreshold;
+
+    private final JsonCacheCodec json = new JsonCacheCodec();
+
+    private BinaryCacheCodec binary;
+
+    private boolean binaryWrite;
+
+    @PostConstruct
+    private void init() {
+        binary = new BinaryCacheCodec(compressThreshold);
+        binaryWrite = "binary".equals(codec);
+        log.info("缓存序列化方式: {}", binaryWrite ? "binary" : "json");
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        if (binaryWrite) {
+            try {
+                return binary.encode(value);
+            } catch (IllegalArgumentException e) {
+                //  二进制格式不支持的类型, 退回 JSON
+                log.debug("{}, 使用 JSON 序列化", e.getMessage());
+            }
+        }
+        return json.encode(value);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        return reader(bytes).decode(bytes, type);
+    }
+
+    @Override
+    public <T> List<T> decodeList(byte[] bytes, Class<T> elementType) {
+        return reader(bytes).decodeList(bytes, elementType);
+    }
+
+    @Override
+    public RedisData decodeRedisData(byte[] bytes, Class<?> dataType) {
+        return reader(bytes).decodeRedisData(bytes, dataType);
+    }
+
+    private CacheCodec reader(byte[] bytes) {
+        return BinaryCacheCodec.isBinary(bytes) ? binary : json;
+    }
+}
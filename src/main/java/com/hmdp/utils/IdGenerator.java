@@ -0,0 +1,18 @@
+package com.hmdp.utils;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 14:10
+ * @Description: 全局 id 生成策略
+ */
+public interface IdGenerator {
+
+    /**
+     * 生成全局唯一 id
+     *
+     * @param keyPrefix 业务前缀
+     * @return
+     */
+    long nextId(String keyPrefix);
+
+}
@@ -0,0 +1,41 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 21:10
+ * @Description: Hutool JSON 序列化, 和之前直接用 JSONUtil 写入的缓存格式完全一样
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        return JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), type);
+    }
+
+    @Override
+    public <T> List<T> decodeList(byte[] bytes, Class<T> elementType) {
+        return JSONUtil.toList(new String(bytes, StandardCharsets.UTF_8), elementType);
+    }
+
+    @Override
+    public RedisData decodeRedisData(byte[] bytes, Class<?> dataType) {
+        //  data 先被解析成 JSONObject, 还要再转一次
+        RedisData redisData = decode(bytes, RedisData.class);
+        Object data = redisData.getData();
+        if (data instanceof JSONObject) {
+            redisData.setData(JSONUtil.toBean((JSONObject) data, dataType));
+        }
+        return redisData;
+    }
+}
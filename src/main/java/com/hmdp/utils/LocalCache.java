@@ -0,0 +1,96 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_LOCAL_MAX_SIZE;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 10:05
+ * @Description: 进程内一级缓存 (L1), 放在 Redis 前面, 容量有限, 每个 key 单独过期, 淘汰策略为 Caffeine 的 W-TinyLFU
+ */
+@Slf4j
+@Component
+public class LocalCache {
+
+    /**
+     * 空值占位, 用来缓存数据库中不存在的数据 (缓存穿透)
+     */
+    public static final Object NULL_VALUE = new Object();
+
+    private final Cache<String, Entry> cache = Caffeine.newBuilder()
+            .maximumSize(CACHE_LOCAL_MAX_SIZE)
+            .expireAfter(new Expiry<String, Entry>() {
+                @Override
+                public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                    return entry.ttlNanos;
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                    return entry.ttlNanos;
+                }
+
+                @Override
+                public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                    //  读取不续期
+                    return currentDuration;
+                }
+            })
+            .build();
+
+    /**
+     * 查询本地缓存
+     *
+     * @param key
+     * @return null 表示未命中, NULL_VALUE 表示命中了空值
+     */
+    public Object get(String key) {
+        Entry entry = cache.getIfPresent(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * 写入本地缓存, value 为 null 时写入空值占位
+     *
+     * @param key
+     * @param value
+     * @param time
+     * @param unit
+     */
+    public void put(String key, Object value, long time, TimeUnit unit) {
+        if (time <= 0) {
+            return;
+        }
+        cache.put(key, new Entry(value == null ? NULL_VALUE : value, unit.toNanos(time)));
+    }
+
+    /**
+     * 删除本地缓存
+     *
+     * @param key
+     */
+    public void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long ttlNanos;
+
+        private Entry(Object value, long ttlNanos) {
+            this.value = value;
+            this.ttlNanos = ttlNanos;
+        }
+    }
+}
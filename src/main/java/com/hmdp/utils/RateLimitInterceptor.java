@@ -0,0 +1,61 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 16:20
+ * @Description: 秒杀接口限流拦截器, 超过限制直接返回 429, 请求不会到达 Redis 脚本
+ */
+@Slf4j
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    //  这个类没有被 Spring 管理, 通过构造方法传入
+    private final SeckillRateLimiter rateLimiter;
+
+    public RateLimitInterceptor(SeckillRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+
+        //  1. 从路径中取出优惠券 id   /voucher-order/seckill/{id}
+        @SuppressWarnings("unchecked")
+        Map<String, String> pathVariables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (pathVariables == null || pathVariables.get("id") == null) {
+            return true;
+        }
+        Long voucherId;
+        try {
+            voucherId = Long.valueOf(pathVariables.get("id"));
+        } catch (NumberFormatException e) {
+            return true;
+        }
+
+        //  2. 限流
+        UserDTO user = UserHolder.getUser();
+        if (rateLimiter.tryAcquire(voucherId, user == null ? null : user.getId())) {
+            return true;
+        }
+
+        //  3. 被限流, 返回 429
+        log.debug("秒杀请求被限流, voucherId: {}", voucherId);
+        response.setStatus(429);
+        response.setContentType("application/json;charset=UTF-8");
+        response.getOutputStream().write(
+                JSONUtil.toJsonStr(Result.fail("活动太火爆了, 请稍后再试~")).getBytes(StandardCharsets.UTF_8));
+        return false;
+    }
+}
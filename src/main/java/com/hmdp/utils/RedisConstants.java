@@ -5,12 +5,23 @@ public class RedisConstants {
     public static final Long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 30L;
+    public static final Long LOGIN_USER_LOCAL_TTL = 60L;
+    public static final String LOGIN_REVOKED_KEY = "login:revoked";
+    public static final String LOGIN_REVOKE_CHANNEL = "login:revoke";
 
     public static final Long CACHE_NULL_TTL = 2L;
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
 
+    public static final Long CACHE_LOCAL_TTL = 60L;
+    public static final Long CACHE_LOCAL_MAX_SIZE = 10000L;
+    public static final String CACHE_BLOOM_ADD_CHANNEL = "cache:bloom:add";
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+
     public static final Long SHOP_TYPE_TTL = 30L;
     public static final String SHOP_TYPE_KEY = "cache:shop:TypeList:";
 
@@ -18,11 +29,35 @@ public class RedisConstants {
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:soldout";
+    public static final String SECKILL_RESTOCK_CHANNEL = "seckill:restock";
+    public static final Long SECKILL_SOLD_OUT_TTL = 10L;
+    public static final String CACHE_SECKILL_VOUCHER_KEY = "cache:seckill:voucher:";
+    public static final Long CACHE_SECKILL_VOUCHER_TTL = 30L;
+    public static final String RATE_LIMIT_KEY = "rate:limit:seckill:";
+    public static final String SECKILL_ORDER_STREAM_KEY = "stream.orders:";
+    public static final String SECKILL_ORDER_GROUP = "g1";
+    public static final String SECKILL_ORDER_DEAD_LETTER_KEY = "stream.orders.dlq";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String BLOG_LIKED_COUNT_KEY = "blog:liked:count";
+    public static final String BLOG_LIKED_DIRTY_KEY = "blog:liked:dirty";
+    public static final String BLOG_HOT_KEY = "blog:hot";
+    public static final String BLOG_CREATED_KEY = "blog:created";
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+    public static final Long CACHE_BLOG_TTL = 30L;
     public static final String FOLLOW_KEY = "follows:";
 
 
+    public static final String ID_WORKER_KEY = "id:worker:";
+    public static final Long ID_WORKER_TTL = 30L;
+
     public static final String FEED_KEY = "feed:";
+    public static final String FEED_STREAM_KEY = "stream.feed";
+    public static final String FEED_OUTBOX_KEY = "feed:outbox:";
+    public static final String FEED_BIG_AUTHOR_KEY = "feed:big";
+    public static final String FEED_GROUP = "g1";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    public static final String SHOP_GEO_SYNC_CHANNEL = "shop:geo:sync";
+    public static final String CACHE_SHOP_LIST_KEY = "cache:shop:list:";
     public static final String USER_SIGN_KEY = "sign:";
 }
@@ -8,4 +8,9 @@ import java.time.LocalDateTime;
 public class RedisData {
     private LocalDateTime expireTime;
     private Object data;
+
+    /**
+     * 上次重建这条缓存花费的时间 (毫秒), 用来决定提前刷新的概率
+     */
+    private Long delta;
 }
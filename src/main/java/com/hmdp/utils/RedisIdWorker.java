@@ -1,22 +1,33 @@
 package com.hmdp.utils;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @Author: dy
  * @Date: 2023/10/23 20:51
  * @Description: 全局 id 生成器
  */
-
+@Slf4j
 @Component
-public class RedisIdWorker {
+@ConditionalOnProperty(name = "hmdp.id.generator", havingValue = "redis", matchIfMissing = true)
+public class RedisIdWorker implements IdGenerator {
 
     /**
      * 开始时间戳
@@ -28,15 +39,42 @@ public class RedisIdWorker {
      */
     private static final int COUNT_BITS = 32;
 
+    /**
+     * 日期格式, 每次 new 一个 DateTimeFormatter 太浪费了
+     */
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
+    /**
+     * 号段模式: 剩余号段用到这个比例时, 异步预取下一个号段
+     */
+    private static final double PREFETCH_RATIO = 0.8;
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    /**
+     * redis: 每次生成 id 都 INCR 一次;  segment: 每次从 Redis 租用一段序列号, 在本地分配
+     */
+    @Value("${hmdp.id.mode:redis}")
+    private String mode;
+
+    /**
+     * 号段模式下每次租用的序列号数量
+     */
+    @Value("${hmdp.id.segment-step:1000}")
+    private int segmentStep;
+
+    private final Map<String, SegmentBuffer> segmentBuffers = new ConcurrentHashMap<>();
+
+    private final ExecutorService segmentLoader = Executors.newSingleThreadExecutor();
+
     /**
      * 我们的 id 生成策略为 时间戳 + Redis key 的自增 id
      *
      * @param keyPrefix
      * @return
      */
+    @Override
     public long nextId(String keyPrefix) {
 
         //  1. 生成时间戳
@@ -44,9 +82,14 @@ public class RedisIdWorker {
         long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
         long timestamp = nowSecond - BEGIN_TIMESTAMP;
 
+        //  号段模式, 序列号在本地分配, 不访问 Redis
+        if ("segment".equals(mode)) {
+            return timestamp << COUNT_BITS | nextSequence(keyPrefix, now.toLocalDate());
+        }
+
         //  2. 生成序列号
         //  2.1 获取当天日期, 精确到天
-        String data = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
+        String data = now.format(DATE_FORMATTER);
 
         //  2.2 自增长, 这里是让 Redis 和 key 对应的那个 value 自增长, 并且把它返回
         Long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + data + ":");
@@ -58,4 +101,117 @@ public class RedisIdWorker {
         return timestamp << COUNT_BITS | count;
     }
 
+    /**
+     * 号段模式: 从当前号段中取一个序列号, 号段用完了切换到预取好的下一个号段
+     *
+     * @param keyPrefix
+     * @param day
+     * @return
+     */
+    private long nextSequence(String keyPrefix, LocalDate day) {
+        SegmentBuffer buffer = segmentBuffers.computeIfAbsent(keyPrefix, SegmentBuffer::new);
+
+        while (true) {
+            Segment segment = buffer.current;
+
+            //  1. 还没有号段, 或者跨天了 (序列号按天计数), 同步加载
+            if (segment == null || !segment.day.equals(day)) {
+                synchronized (buffer) {
+                    if (buffer.current == segment) {
+                        buffer.current = takeNextOrLoad(buffer, day);
+                    }
+                }
+                continue;
+            }
+
+            //  2. 本地分配
+            long sequence = segment.cursor.getAndIncrement();
+            if (sequence <= segment.max) {
+                //  2.1 用到 80%, 异步预取下一个号段
+                if (sequence - segment.start >= segmentStep * PREFETCH_RATIO
+                        && buffer.next == null && buffer.loading.compareAndSet(false, true)) {
+                    segmentLoader.submit(() -> {
+                        try {
+                            buffer.next = loadSegment(keyPrefix, day);
+                        } catch (Exception e) {
+                            log.error("预取号段失败, keyPrefix: {}", keyPrefix, e);
+                        } finally {
+                            buffer.loading.set(false);
+                        }
+                    });
+                }
+                return sequence;
+            }
+
+            //  3. 号段用完了, 切换号段 (只有一个线程会切换, 其他线程重新进入循环)
+            synchronized (buffer) {
+                if (buffer.current == segment) {
+                    buffer.current = takeNextOrLoad(buffer, day);
+                }
+            }
+        }
+    }
+
+    private Segment takeNextOrLoad(SegmentBuffer buffer, LocalDate day) {
+        Segment next = buffer.next;
+        buffer.next = null;
+        if (next != null && next.day.equals(day)) {
+            return next;
+        }
+        return loadSegment(buffer.keyPrefix, day);
+    }
+
+    /**
+     * 从 Redis 租用一个号段 INCRBY icr:keyPrefix:yyyy:MM:dd: step
+     * 和 redis 模式共用同一个 key, 两种模式混用也不会产生重复的序列号
+     *
+     * @param keyPrefix
+     * @param day
+     * @return
+     */
+    private Segment loadSegment(String keyPrefix, LocalDate day) {
+        String key = "icr:" + keyPrefix + ":" + day.format(DATE_FORMATTER) + ":";
+        Long max = stringRedisTemplate.opsForValue().increment(key, segmentStep);
+        if (max == null) {
+            throw new IllegalStateException("租用号段失败: " + key);
+        }
+        return new Segment(day, max - segmentStep + 1, max);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        segmentLoader.shutdownNow();
+    }
+
+    /**
+     * 每个业务 (keyPrefix) 一个双号段缓冲: 当前号段 + 预取的下一个号段
+     */
+    private static class SegmentBuffer {
+        private final String keyPrefix;
+        private volatile Segment current;
+        private volatile Segment next;
+        private final AtomicBoolean loading = new AtomicBoolean(false);
+
+        private SegmentBuffer(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+    }
+
+    /**
+     * 号段 [start, max]
+     */
+    private static class Segment {
+        private final LocalDate day;
+        private final long start;
+        private final long max;
+        private final AtomicLong cursor;
+
+        private Segment(LocalDate day, long start, long max) {
+            this.day = day;
+            this.start = start;
+            this.max = max;
+            this.cursor = new AtomicLong(start);
+        }
+    }
+
 }
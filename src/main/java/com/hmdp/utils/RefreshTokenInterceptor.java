@@ -1,18 +1,21 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.UserDTO;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.HandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_LOCAL_TTL;
 import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
 
 /**
@@ -26,8 +29,15 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
     //  这里的 Redis 要通过 构造方法来获取, 因为这个类并没有被 Spring 管理
     private StringRedisTemplate stringRedisTemplate;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
+    private LocalCache localCache;
+
+    private SignedTokenManager signedTokenManager;
+
+    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate, LocalCache localCache,
+                                   SignedTokenManager signedTokenManager) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.localCache = localCache;
+        this.signedTokenManager = signedTokenManager;
     }
 
 
@@ -47,29 +57,53 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
             return true;
         }
 
+        //  无状态令牌模式, 本地校验签名即可, 不访问 Redis
+        if (signedTokenManager.isEnabled()) {
+            UserDTO userDTO = signedTokenManager.verify(token);
+            if (userDTO != null) {
+                UserHolder.saveUser(userDTO);
+            }
+            return true;
+        }
+
         String key = LOGIN_USER_KEY + token;
 
-        //  2. 根据 token 获取 User 对象
-        Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(key);
+        //  2. 先查本地缓存, 命中的话这次请求完全不访问 Redis
+        //  本地缓存的有效期就是续期间隔, 所以同一个 token 在一个节点上最多 LOGIN_USER_LOCAL_TTL 秒续期一次
+        Object local = localCache.get(key);
+        if (local instanceof UserDTO) {
+            UserHolder.saveUser((UserDTO) local);
+            return true;
+        }
+
+        //  3. 本地缓存未命中, 用管道一次性 HGETALL + EXPIRE (刷新 token 有效期)
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.hGetAll(key);
+            conn.expire(key, TimeUnit.MINUTES.toSeconds(LOGIN_USER_TTL));
+            return null;
+        });
+        @SuppressWarnings("unchecked")
+        Map<String, String> userMap = (Map<String, String>) results.get(0);
 
-        //  3. 判断用户是否为 null
-        if (userMap.isEmpty()) {
-            //  4. 用户不存在
+        //  4. 判断用户是否为 null
+        if (userMap == null || userMap.isEmpty()) {
+            //  用户不存在
 
             return true;
         }
 
-        //  5. 将获取到的 HashMap 转换为 User 对象
-        UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
+        //  5. 将获取到的 HashMap 转换为 User 对象 (字段很少, 直接赋值, 不走反射)
+        UserDTO userDTO = new UserDTO();
+        userDTO.setId(Long.valueOf(userMap.get("id")));
+        userDTO.setNickName(userMap.get("nickName"));
+        userDTO.setIcon(userMap.get("icon"));
 
-        //  6. 将 User 对象添加到 ThreadLocal 中
+        //  6. 将 User 对象添加到 ThreadLocal 中, 同时放入本地缓存
         UserHolder.saveUser(userDTO);
+        localCache.put(key, userDTO, LOGIN_USER_LOCAL_TTL, TimeUnit.SECONDS);
 
-
-        //  7. 刷新 token 有限期
-        stringRedisTemplate.expire(key, LOGIN_USER_TTL, TimeUnit.MINUTES);
-        //  8. 放行
-
+        //  7. 放行
         return true;
     }
 
@@ -0,0 +1,101 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.RateLimitProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.RATE_LIMIT_KEY;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 16:10
+ * @Description: 秒杀限流: 本地令牌桶 (按用户, 按优惠券) + 可选的集群滑动窗口
+ */
+@Slf4j
+@Component
+public class SeckillRateLimiter {
+
+    private static final DefaultRedisScript<Long> RATE_LIMIT_SCRIPT;
+
+    static {
+        RATE_LIMIT_SCRIPT = new DefaultRedisScript<>();
+        RATE_LIMIT_SCRIPT.setLocation(new ClassPathResource("rate_limit.lua"));
+        RATE_LIMIT_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RateLimitProperties properties;
+
+    /**
+     * 优惠券令牌桶, 优惠券数量不多, 但也要防止无限增长
+     */
+    private final Cache<Long, TokenBucket> voucherBuckets = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * 用户令牌桶, 一段时间不访问就回收
+     */
+    private final Cache<Long, TokenBucket> userBuckets = Caffeine.newBuilder()
+            .maximumSize(100000)
+            .expireAfterAccess(1, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * 是否放行本次秒杀请求
+     *
+     * @param voucherId
+     * @param userId    未登录时为 null
+     * @return
+     */
+    public boolean tryAcquire(Long voucherId, Long userId) {
+        if (!properties.isEnabled()) {
+            return true;
+        }
+
+        //  1. 单个用户的请求频率
+        if (userId != null) {
+            TokenBucket userBucket = userBuckets.get(userId,
+                    id -> new TokenBucket(properties.getUserQps(), properties.getUserQps()));
+            if (!userBucket.tryAcquire()) {
+                return false;
+            }
+        }
+
+        //  2. 单张优惠券在本节点的请求频率
+        TokenBucket voucherBucket = voucherBuckets.get(voucherId, id -> {
+            double qps = properties.getVoucherOverrides().getOrDefault(id, properties.getVoucherQps());
+            return new TokenBucket(qps, qps);
+        });
+        if (!voucherBucket.tryAcquire()) {
+            return false;
+        }
+
+        //  3. 集群限流, 所有节点共享一个滑动窗口
+        if (properties.isClusterEnabled()) {
+            Long result = stringRedisTemplate.execute(
+                    RATE_LIMIT_SCRIPT,
+                    Collections.singletonList(RATE_LIMIT_KEY + voucherId),
+                    String.valueOf(System.currentTimeMillis()),
+                    String.valueOf(properties.getClusterWindowMs()),
+                    String.valueOf(properties.getClusterVoucherLimit()),
+                    UUID.fastUUID().toString(true));
+            return result != null && result == 1;
+        }
+        return true;
+    }
+}
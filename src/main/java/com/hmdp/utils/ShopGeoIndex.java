@@ -0,0 +1,236 @@
+package com.hmdp.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 19:10
+ * @Description: 进程内商铺地理索引, 每个商铺类型一个经纬度网格
+ * 附近查询从中心格子一圈一圈向外扩展, 只有距离已经确定不会被外圈超过的商铺才会输出, 所以每页的代价和页大小相关, 和总数无关
+ * 只适用于城市范围内的查询, 没有处理经度 180 度和两极附近的情况
+ */
+public class ShopGeoIndex {
+
+    /**
+     * 地球平均半径 (米)
+     */
+    private static final double EARTH_RADIUS = 6371008.8;
+
+    /**
+     * 纬度方向每度的距离 (米)
+     */
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS / 180;
+
+    private static final Comparator<Hit> HIT_ORDER =
+            Comparator.comparingDouble(Hit::getDistance).thenComparingLong(Hit::getShopId);
+
+    /**
+     * 格子大小 (度)
+     */
+    private final double cellDegrees;
+
+    /**
+     * 类型 id -> (格子 -> 格子中的商铺), 格子中的数组不会被修改, 更新时整体替换, 读不需要加锁
+     */
+    private volatile Map<Long, Map<Long, Point[]>> grids = new ConcurrentHashMap<>();
+
+    /**
+     * 商铺 id -> 位置, 用来在更新时找到旧的格子
+     */
+    private volatile Map<Long, Point> points = new ConcurrentHashMap<>();
+
+    public ShopGeoIndex(double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+    }
+
+    /**
+     * 全量替换索引
+     *
+     * @param all
+     */
+    public synchronized void reload(Collection<Point> all) {
+        Map<Long, Map<Long, List<Point>>> building = new HashMap<>();
+        Map<Long, Point> newPoints = new ConcurrentHashMap<>(all.size() * 2);
+        for (Point point : all) {
+            building.computeIfAbsent(point.typeId, k -> new HashMap<>())
+                    .computeIfAbsent(cellOf(point.x, point.y), k -> new ArrayList<>())
+                    .add(point);
+            newPoints.put(point.shopId, point);
+        }
+        Map<Long, Map<Long, Point[]>> newGrids = new ConcurrentHashMap<>(building.size() * 2);
+        building.forEach((typeId, cells) -> {
+            Map<Long, Point[]> grid = new ConcurrentHashMap<>(cells.size() * 2);
+            cells.forEach((cell, list) -> grid.put(cell, list.toArray(new Point[0])));
+            newGrids.put(typeId, grid);
+        });
+        grids = newGrids;
+        points = newPoints;
+    }
+
+    /**
+     * 新增或更新一个商铺 (类型和坐标可能都变了)
+     *
+     * @param point
+     */
+    public synchronized void upsert(Point point) {
+        remove(point.shopId);
+        grids.computeIfAbsent(point.typeId, k -> new ConcurrentHashMap<>())
+                .merge(cellOf(point.x, point.y), new Point[]{point}, (old, one) -> {
+                    Point[] cell = new Point[old.length + 1];
+                    System.arraycopy(old, 0, cell, 0, old.length);
+                    cell[old.length] = point;
+                    return cell;
+                });
+        points.put(point.shopId, point);
+    }
+
+    public synchronized void remove(long shopId) {
+        Point old = points.remove(shopId);
+        if (old == null) {
+            return;
+        }
+        Map<Long, Point[]> grid = grids.get(old.typeId);
+        if (grid == null) {
+            return;
+        }
+        grid.computeIfPresent(cellOf(old.x, old.y), (cell, arr) -> {
+            Point[] rest = new Point[arr.length - 1];
+            int i = 0;
+            for (Point p : arr) {
+                if (p.shopId != shopId && i < rest.length) {
+                    rest[i++] = p;
+                }
+            }
+            return rest.length == 0 ? null : rest;
+        });
+    }
+
+    /**
+     * 按距离升序查询半径内的商铺, 游标为上一页最后一个商铺的 (距离, id)
+     *
+     * @param typeId
+     * @param x            经度
+     * @param y            纬度
+     * @param radius       半径 (米)
+     * @param lastDistance 上一页最后一个商铺的距离, 第一页传负数
+     * @param lastId       上一页最后一个商铺的 id
+     * @param limit
+     * @return
+     */
+    public List<Hit> search(long typeId, double x, double y, double radius, double lastDistance, long lastId, int limit) {
+        Map<Long, Point[]> grid = grids.get(typeId);
+        if (grid == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        //  1. 格子在两个方向上的边长 (米), 经度方向取查询范围内最高纬度处的值, 保证是下界
+        double maxLat = Math.min(89.9, Math.abs(y) + radius / METERS_PER_DEGREE);
+        double cellHeight = cellDegrees * METERS_PER_DEGREE;
+        double cellWidth = cellHeight * Math.cos(Math.toRadians(maxLat));
+        double cellMin = Math.min(cellWidth, cellHeight);
+        double cellDiagonal = Math.hypot(cellDegrees * METERS_PER_DEGREE, cellHeight);
+
+        //  2. 第 k 圈中的商铺距离不超过 (k + 1) * 对角线, 比游标还近的圈直接跳过
+        int startRing = lastDistance < 0 ? 0 : Math.max(0, (int) Math.ceil(lastDistance / cellDiagonal) - 1);
+        int maxRing = (int) Math.ceil(radius / cellMin) + 1;
+        long centerX = (long) Math.floor(x / cellDegrees);
+        long centerY = (long) Math.floor(y / cellDegrees);
+
+        List<Hit> result = new ArrayList<>(limit);
+        PriorityQueue<Hit> candidates = new PriorityQueue<>(HIT_ORDER);
+        for (int k = startRing; k <= maxRing; k++) {
+            //  3. 只遍历第 k 圈的格子
+            for (long cx = centerX - k; cx <= centerX + k; cx++) {
+                long step = (cx == centerX - k || cx == centerX + k) ? 1 : 2L * k;
+                for (long cy = centerY - k; cy <= centerY + k; cy += Math.max(1, step)) {
+                    Point[] cell = grid.get(key(cx, cy));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (Point p : cell) {
+                        double d = distance(x, y, p.x, p.y);
+                        if (d <= radius && isAfter(d, p.shopId, lastDistance, lastId)) {
+                            candidates.add(new Hit(p.shopId, d));
+                        }
+                    }
+                }
+            }
+
+            //  4. 外圈的商铺距离至少是 k 个格子, 比这个近的候选已经是最终顺序
+            double settled = k * cellMin;
+            while (!candidates.isEmpty() && candidates.peek().distance <= settled && result.size() < limit) {
+                result.add(candidates.poll());
+            }
+            if (result.size() >= limit) {
+                return result;
+            }
+        }
+        while (!candidates.isEmpty() && result.size() < limit) {
+            result.add(candidates.poll());
+        }
+        return result;
+    }
+
+    private static boolean isAfter(double d, long shopId, double lastDistance, long lastId) {
+        return d > lastDistance || (d == lastDistance && shopId > lastId);
+    }
+
+    private long cellOf(double x, double y) {
+        return key((long) Math.floor(x / cellDegrees), (long) Math.floor(y / cellDegrees));
+    }
+
+    private static long key(long cx, long cy) {
+        return (cx << 32) ^ (cy & 0xffffffffL);
+    }
+
+    /**
+     * 两点间的球面距离 (米), haversine 公式
+     */
+    private static double distance(double x1, double y1, double x2, double y2) {
+        double dLat = Math.toRadians(y2 - y1);
+        double dLon = Math.toRadians(x2 - x1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(y1)) * Math.cos(Math.toRadians(y2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    public static class Point {
+        private final long shopId;
+        private final long typeId;
+        private final double x;
+        private final double y;
+
+        public Point(long shopId, long typeId, double x, double y) {
+            this.shopId = shopId;
+            this.typeId = typeId;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    public static class Hit {
+        private final long shopId;
+        private final double distance;
+
+        private Hit(long shopId, double distance) {
+            this.shopId = shopId;
+            this.distance = distance;
+        }
+
+        public long getShopId() {
+            return shopId;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+    }
+}
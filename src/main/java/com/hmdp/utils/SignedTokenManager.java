@@ -0,0 +1,220 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 17:20
+ * @Description: 无状态登录令牌: base64url(用户信息 + 过期时间) . base64url(HMAC-SHA256 签名)
+ * 校验只在本地完成, 不访问 Redis; 退出登录时把签名写入 Redis 吊销集合, 各节点用布隆过滤器判断是否可能被吊销
+ */
+@Slf4j
+@Component
+public class SignedTokenManager {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    /**
+     * 吊销集合的预计大小和误判率, 只有布隆过滤器命中时才会访问 Redis
+     */
+    private static final long REVOKED_EXPECTED_SIZE = 100000;
+    private static final double REVOKED_FPP = 0.001;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * redis: 用户信息保存在 Redis hash 中;  token: 无状态签名令牌
+     */
+    @Value("${hmdp.session.mode:redis}")
+    private String mode;
+
+    /**
+     * 签名密钥, 所有节点必须一致
+     */
+    @Value("${hmdp.session.secret:}")
+    private String secret;
+
+    private SecretKeySpec key;
+
+    /**
+     * Mac 不是线程安全的, 每个线程一个
+     */
+    private final ThreadLocal<Mac> macHolder = ThreadLocal.withInitial(() -> {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private volatile BloomFilter revokedFilter = new BloomFilter(REVOKED_EXPECTED_SIZE, REVOKED_FPP);
+
+    @PostConstruct
+    private void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        if (StrUtil.isBlank(secret)) {
+            throw new IllegalStateException("hmdp.session.mode=token 时必须配置 hmdp.session.secret");
+        }
+        key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        rebuildRevokedFilter();
+    }
+
+    public boolean isEnabled() {
+        return "token".equals(mode);
+    }
+
+    /**
+     * 签发令牌
+     *
+     * @param userDTO
+     * @return
+     */
+    public String issue(UserDTO userDTO) {
+        long expireAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL);
+        JSONObject payload = new JSONObject()
+                .set("i", userDTO.getId())
+                .set("n", userDTO.getNickName())
+                .set("c", userDTO.getIcon())
+                .set("e", expireAt);
+        String body = ENCODER.encodeToString(payload.toString().getBytes(StandardCharsets.UTF_8));
+        return body + "." + sign(body);
+    }
+
+    /**
+     * 校验令牌, 签名正确, 未过期, 未吊销才返回用户
+     *
+     * @param token
+     * @return 校验失败返回 null
+     */
+    public UserDTO verify(String token) {
+        //  1. 校验签名
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        String body = token.substring(0, dot);
+        String signature = token.substring(dot + 1);
+        if (!MessageDigest.isEqual(
+                sign(body).getBytes(StandardCharsets.US_ASCII),
+                signature.getBytes(StandardCharsets.US_ASCII))) {
+            return null;
+        }
+
+        //  2. 校验有效期
+        JSONObject payload;
+        try {
+            payload = parsePayload(body);
+        } catch (Exception e) {
+            return null;
+        }
+        if (payload.getLong("e", 0L) <= System.currentTimeMillis()) {
+            return null;
+        }
+
+        //  3. 校验是否吊销, 布隆过滤器判断不存在就一定没有吊销, 可能存在时才去 Redis 确认
+        if (revokedFilter.mightContain(signature)
+                && stringRedisTemplate.opsForZSet().score(LOGIN_REVOKED_KEY, signature) != null) {
+            return null;
+        }
+
+        UserDTO userDTO = new UserDTO();
+        userDTO.setId(payload.getLong("i"));
+        userDTO.setNickName(payload.getStr("n"));
+        userDTO.setIcon(payload.getStr("c"));
+        return userDTO;
+    }
+
+    /**
+     * 吊销令牌 (退出登录), 按令牌的过期时间写入吊销集合, 并通知所有节点
+     *
+     * @param token
+     */
+    public void revoke(String token) {
+        if (StrUtil.isBlank(token) || verify(token) == null) {
+            return;
+        }
+        int dot = token.indexOf('.');
+        String signature = token.substring(dot + 1);
+        long expireAt = parsePayload(token.substring(0, dot)).getLong("e");
+
+        stringRedisTemplate.opsForZSet().add(LOGIN_REVOKED_KEY, signature, expireAt);
+        revokedFilter.put(signature);
+        stringRedisTemplate.convertAndSend(LOGIN_REVOKE_CHANNEL, signature);
+    }
+
+    /**
+     * 收到其他节点的吊销通知, 只更新本地布隆过滤器
+     *
+     * @param signature
+     */
+    public void markRevoked(String signature) {
+        revokedFilter.put(signature);
+    }
+
+    /**
+     * 定时清理已经过期的吊销记录 (过期的令牌本身就无法通过校验), 并重建布隆过滤器, 防止误判率越来越高
+     */
+    @Scheduled(fixedDelay = 600000)
+    public void rebuildRevokedFilter() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForZSet().removeRangeByScore(LOGIN_REVOKED_KEY, 0, System.currentTimeMillis());
+            Set<String> revoked = stringRedisTemplate.opsForZSet().range(LOGIN_REVOKED_KEY, 0, -1);
+            BloomFilter filter = new BloomFilter(
+                    Math.max(REVOKED_EXPECTED_SIZE, revoked == null ? 0 : revoked.size() * 2L), REVOKED_FPP);
+            if (revoked != null) {
+                revoked.forEach(filter::put);
+            }
+            revokedFilter = filter;
+            //  替换之后再读一次, 补上重建期间其他节点新增的吊销记录
+            Set<String> latest = stringRedisTemplate.opsForZSet().range(LOGIN_REVOKED_KEY, 0, -1);
+            if (latest != null) {
+                latest.forEach(filter::put);
+            }
+        } catch (Exception e) {
+            log.error("重建吊销布隆过滤器失败", e);
+        }
+    }
+
+    private JSONObject parsePayload(String body) {
+        return JSONUtil.parseObj(new String(DECODER.decode(body), StandardCharsets.UTF_8));
+    }
+
+    private String sign(String body) {
+        byte[] digest = macHolder.get().doFinal(body.getBytes(StandardCharsets.UTF_8));
+        return ENCODER.encodeToString(digest);
+    }
+}
@@ -0,0 +1,56 @@
+package com.hmdp.utils;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 20:15
+ * @Description: 同一个节点内的请求合并, 同一个 key 同时只有一个线程执行加载, 其他线程等待它的结果
+ * 只能防住本节点内的并发, 跨节点仍然要配合分布式锁
+ */
+@Component
+public class SingleFlight {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 执行加载, 如果已经有线程在加载这个 key, 直接等待它的结果 (包括异常)
+     *
+     * @param key
+     * @param loader
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        try {
+            T value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            //  加载完成后移除, 之后的请求会重新加载 (此时一般已经能命中缓存了)
+            inFlight.remove(key, future);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+import static com.hmdp.utils.RedisConstants.ID_WORKER_TTL;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 14:20
+ * @Description: 雪花算法 id 生成器: 1 位标志位 + 40 位毫秒时间戳 + 10 位 worker id + 12 位序列号, 生成 id 不访问网络
+ * worker id 启动时从 Redis 租用, 定时续期
+ * 标志位 (第 62 位) 固定为 1, RedisIdWorker 的 id 是 秒级时间戳 << 32, 2056 年之前都小于 2^62,
+ * 所以从 redis 切换到 snowflake 之后, 新 id 一定比之前生成的所有 id 大, 也不会和它们重复
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "hmdp.id.generator", havingValue = "snowflake")
+public class SnowflakeIdWorker implements IdGenerator {
+
+    /**
+     * 开始时间戳 (毫秒), 和 RedisIdWorker 一样是 2022-01-01
+     */
+    private static final long BEGIN_TIMESTAMP = 1640995200000L;
+
+    private static final int WORKER_ID_BITS = 10;
+    private static final int TIMESTAMP_BITS = 40;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final long MAX_TIMESTAMP = (1L << TIMESTAMP_BITS) - 1;
+
+    /**
+     * 标志位, 和 RedisIdWorker 的 id 区分开
+     */
+    private static final long SNOWFLAKE_FLAG = 1L << (TIMESTAMP_BITS + WORKER_ID_BITS + SEQUENCE_BITS);
+
+    /**
+     * 时钟回拨在这个范围内 (毫秒) 就等一等, 超过了直接报错
+     */
+    private static final long MAX_BACKWARD_MS = 5;
+
+    /**
+     * 当前节点标示, 用作租约的 value, 防止续期或释放别人的租约
+     */
+    private static final String OWNER = UUID.randomUUID().toString(true);
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+
+    static {
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+
+        UNLOCK_SCRIPT = new DefaultRedisScript<>();
+        UNLOCK_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
+        UNLOCK_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    private volatile long workerId = -1;
+
+    /**
+     * 租约到期时间 (毫秒), 连不上 Redis 无法续期时, 过了这个时间就不能再用这个 worker id 了
+     */
+    private volatile long leaseExpireAt;
+
+    private long lastTimestamp = -1L;
+
+    private long sequence = 0L;
+
+    @PostConstruct
+    private void init() {
+        leaseWorkerId();
+    }
+
+    /**
+     * 生成 id, keyPrefix 在这里用不到, 雪花 id 本身就是全局唯一的
+     *
+     * @param keyPrefix
+     * @return
+     */
+    @Override
+    public synchronized long nextId(String keyPrefix) {
+        if (workerId < 0) {
+            throw new IllegalStateException("worker id 租约已丢失, 暂时无法生成 id");
+        }
+
+        long timestamp = System.currentTimeMillis();
+        if (timestamp >= leaseExpireAt) {
+            throw new IllegalStateException("worker id 租约已过期, 暂时无法生成 id");
+        }
+
+        //  1. 时钟回拨
+        if (timestamp < lastTimestamp) {
+            long offset = lastTimestamp - timestamp;
+            if (offset > MAX_BACKWARD_MS) {
+                throw new IllegalStateException("时钟回拨了 " + offset + " 毫秒, 拒绝生成 id");
+            }
+            //  回拨的不多, 等时间追上来
+            timestamp = waitUntilAfter(lastTimestamp - 1);
+        }
+
+        //  2. 同一毫秒内, 序列号自增, 用完了等下一毫秒
+        if (timestamp == lastTimestamp) {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                timestamp = waitUntilAfter(lastTimestamp);
+            }
+        } else {
+            sequence = 0L;
+        }
+        lastTimestamp = timestamp;
+
+        //  3. 拼接, 时间戳用完 (2056 年) 之后会和标志位冲突, 直接报错
+        long delta = timestamp - BEGIN_TIMESTAMP;
+        if (delta > MAX_TIMESTAMP) {
+            throw new IllegalStateException("时间戳超出范围, 无法生成 id");
+        }
+        return SNOWFLAKE_FLAG
+                | delta << (WORKER_ID_BITS + SEQUENCE_BITS)
+                | workerId << SEQUENCE_BITS
+                | sequence;
+    }
+
+    private long waitUntilAfter(long last) {
+        long timestamp = System.currentTimeMillis();
+        while (timestamp <= last) {
+            timestamp = System.currentTimeMillis();
+        }
+        return timestamp;
+    }
+
+    /**
+     * 租用 worker id: 依次尝试 SET id:worker:i owner NX EX ttl
+     */
+    private void leaseWorkerId() {
+        for (long id = 0; id <= MAX_WORKER_ID; id++) {
+            long now = System.currentTimeMillis();
+            Boolean success = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(ID_WORKER_KEY + id, OWNER, ID_WORKER_TTL, TimeUnit.SECONDS);
+            if (Boolean.TRUE.equals(success)) {
+                leaseExpireAt = now + TimeUnit.SECONDS.toMillis(ID_WORKER_TTL);
+                workerId = id;
+                log.info("租用 worker id 成功: {}", id);
+                return;
+            }
+        }
+        throw new IllegalStateException("没有可用的 worker id");
+    }
+
+    /**
+     * 心跳续期, 间隔为租约有效期的 1/3
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void heartbeat() {
+        long id = workerId;
+        try {
+            long now = System.currentTimeMillis();
+            Long result = stringRedisTemplate.execute(
+                    RENEW_SCRIPT,
+                    Collections.singletonList(ID_WORKER_KEY + id),
+                    OWNER, ID_WORKER_TTL.toString());
+            if (result != null && result == 1) {
+                leaseExpireAt = now + TimeUnit.SECONDS.toMillis(ID_WORKER_TTL);
+                return;
+            }
+
+            //  租约丢失 (比如长时间 GC 或者和 Redis 断开), 别的节点可能已经拿到了这个 worker id, 重新租一个
+            log.error("worker id {} 租约丢失, 重新租用", id);
+            workerId = -1;
+            leaseWorkerId();
+        } catch (Exception e) {
+            log.error("worker id {} 续期失败", id, e);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        //  释放租约, 只删自己的
+        stringRedisTemplate.execute(
+                UNLOCK_SCRIPT,
+                Collections.singletonList(ID_WORKER_KEY + workerId),
+                OWNER);
+    }
+}
@@ -0,0 +1,90 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 15:05
+ * @Description: 本地售罄标记, 优惠券卖完之后, 后续请求直接在内存中拒绝, 不再执行秒杀脚本
+ * 标记只保留 SECKILL_SOLD_OUT_TTL 秒, 过期后下一个请求会重新执行脚本确认库存, 补库存时调用 clear 立即清除所有节点的标记
+ */
+@Slf4j
+@Component
+public class SoldOutMarker {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 优惠券 id -> 标记过期时间 (毫秒)
+     */
+    private final Map<Long, Long> soldOutVouchers = new ConcurrentHashMap<>();
+
+    /**
+     * 是否已经售罄
+     *
+     * @param voucherId
+     * @return
+     */
+    public boolean isSoldOut(Long voucherId) {
+        Long expireAt = soldOutVouchers.get(voucherId);
+        if (expireAt == null) {
+            return false;
+        }
+        if (expireAt <= System.currentTimeMillis()) {
+            soldOutVouchers.remove(voucherId, expireAt);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 标记售罄, 并广播给其他节点
+     *
+     * @param voucherId
+     */
+    public void soldOut(Long voucherId) {
+        if (!isSoldOut(voucherId)) {
+            markLocal(voucherId);
+            log.info("优惠券 {} 已售罄", voucherId);
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId.toString());
+        }
+    }
+
+    /**
+     * 收到其他节点的售罄通知, 只标记本地
+     *
+     * @param voucherId
+     */
+    public void markLocal(Long voucherId) {
+        soldOutVouchers.put(voucherId, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(SECKILL_SOLD_OUT_TTL));
+    }
+
+    /**
+     * 新增或补充库存之后清除售罄标记, 并广播给其他节点
+     *
+     * @param voucherId
+     */
+    public void clear(Long voucherId) {
+        clearLocal(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_RESTOCK_CHANNEL, voucherId.toString());
+    }
+
+    /**
+     * 收到其他节点的补库存通知, 只清除本地
+     *
+     * @param voucherId
+     */
+    public void clearLocal(Long voucherId) {
+        soldOutVouchers.remove(voucherId);
+    }
+}
@@ -0,0 +1,60 @@
+package com.hmdp.utils;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 23:40
+ * @Description: stream 消费者处理 pending-list 时的重试工具: 判断异常是否是暂时性的, 以及连续失败后的指数退避
+ */
+public final class StreamRetry {
+
+    /**
+     * pending-list 处理失败后的退避时间
+     */
+    private static final long BACKOFF_BASE_MS = 500;
+    private static final long BACKOFF_MAX_MS = 30000;
+
+    private StreamRetry() {
+    }
+
+    /**
+     * 数据库或 Redis 暂时不可用之类的异常, 消息本身没有问题, 应该一直重试
+     *
+     * @param e
+     * @return
+     */
+    public static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof TransientDataAccessException
+                    || t instanceof RecoverableDataAccessException
+                    || t instanceof DataAccessResourceFailureException
+                    || t instanceof CannotCreateTransactionException
+                    || t instanceof SQLTransientException
+                    || t instanceof SQLRecoverableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 指数退避, 从 BACKOFF_BASE_MS 开始翻倍, 最多 BACKOFF_MAX_MS
+     *
+     * @param attempt 连续失败的次数
+     */
+    public static void backoff(int attempt) {
+        long millis = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << Math.min(attempt - 1, 10));
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.hmdp.utils;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/18 16:00
+ * @Description: 本地令牌桶, 按固定速率生成令牌, 最多积攒 capacity 个, 用来应对突发流量
+ */
+public class TokenBucket {
+
+    /**
+     * 桶容量 (允许的突发请求数)
+     */
+    private final double capacity;
+
+    /**
+     * 每纳秒生成的令牌数
+     */
+    private final double tokensPerNano;
+
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    public TokenBucket(double permitsPerSecond, double capacity) {
+        this.capacity = capacity;
+        this.tokensPerNano = permitsPerSecond / 1_000_000_000D;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 尝试获取一个令牌
+     *
+     * @return
+     */
+    public synchronized boolean tryAcquire() {
+        //  1. 按流逝的时间补充令牌
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = now;
+
+        //  2. 有令牌就拿走一个
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+}
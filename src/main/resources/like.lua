@@ -0,0 +1,42 @@
+-- 点赞 / 取消点赞切换, 判断是否点过赞和修改在同一个脚本中完成, 并发重复点击也不会重复计数
+-- KEYS[1] 点赞用户 blog:liked:{id}, KEYS[2] 点赞计数 hash, KEYS[3] 待写回数据库的博客 id 集合
+-- KEYS[4] 热门博客排行 zset, KEYS[5] 博客发布时间 hash (秒)
+-- ARGV[1] 博客 id, ARGV[2] 用户 id, ARGV[3] 当前时间
+-- ARGV[4] 数据库中的点赞数, 计数不存在时用来初始化, 为空时返回 {-1, 0}, 由调用方查询数据库后重试
+-- ARGV[5] 热度衰减周期 (秒), 0 表示热度就是点赞数, 和 BlogServiceImpl.hotScore 的算法一致
+-- 返回 {是否点赞 1/0, 点赞数}
+if (redis.call('hexists', KEYS[2], ARGV[1]) == 0) then
+    if (ARGV[4] == '') then
+        return { -1, 0 }
+    end
+    redis.call('hsetnx', KEYS[2], ARGV[1], ARGV[4])
+end
+
+-- 1. 已点赞则取消, 未点赞则点赞
+local liked = 1
+local delta = 1
+if (redis.call('zscore', KEYS[1], ARGV[2])) then
+    redis.call('zrem', KEYS[1], ARGV[2])
+    liked = 0
+    delta = -1
+else
+    redis.call('zadd', KEYS[1], ARGV[3], ARGV[2])
+end
+
+-- 2. 修改计数, 并标记为待写回
+local count = redis.call('hincrby', KEYS[2], ARGV[1], delta)
+if (count < 0) then
+    count = 0
+    redis.call('hset', KEYS[2], ARGV[1], 0)
+end
+redis.call('sadd', KEYS[3], ARGV[1])
+
+-- 3. 更新热门排行, 衰减: log10(点赞数) + 发布时间 / 衰减周期, 新博客天然排在前面, 不需要定时重算
+local decay = tonumber(ARGV[5])
+local score = count
+if (decay > 0) then
+    local created = tonumber(redis.call('hget', KEYS[5], ARGV[1]) or '0')
+    score = math.log10(math.max(count, 1)) + created / decay
+end
+redis.call('zadd', KEYS[4], score, ARGV[1])
+return { liked, count }
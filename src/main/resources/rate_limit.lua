@@ -0,0 +1,19 @@
+-- 滑动窗口限流
+-- KEYS[1] 限流的 key, ARGV[1] 当前时间 (毫秒), ARGV[2] 窗口大小 (毫秒), ARGV[3] 窗口内允许的请求数, ARGV[4] 本次请求的唯一标示
+local key = KEYS[1]
+local now = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local limit = tonumber(ARGV[3])
+
+-- 1. 删除窗口之外的请求记录
+redis.call('zremrangebyscore', key, 0, now - window)
+
+-- 2. 窗口内请求数已经达到上限, 返回 0
+if (redis.call('zcard', key) >= limit) then
+    return 0
+end
+
+-- 3. 记录本次请求, 返回 1
+redis.call('zadd', key, now, ARGV[4])
+redis.call('pexpire', key, window)
+return 1
@@ -0,0 +1,8 @@
+-- 这里的 KEYS[1] 就是 worker id 租约的 key, ARGV[1] 是当前节点标示, ARGV[2] 是续期的秒数
+-- 判断租约是否还是自己的
+if (redis.call('GET', KEYS[1]) == ARGV[1]) then
+    -- 是自己的, 续期
+    return redis.call('EXPIRE', KEYS[1], ARGV[2])
+end
+-- 租约已经丢失
+return 0
@@ -8,6 +8,9 @@ local userId = ARGV[2]
 --  1.3 订单 id
 local orderId = ARGV[3]
 
+--  1.4 订单消息队列 (按 voucherId 分片后的 stream key)
+local streamKey = ARGV[4]
+
 --  订单 id (用来后续执行订单的操作)
 --local orderId = ARGV[3]
 
@@ -22,7 +25,12 @@ local orderKey = 'seckill:order:' .. voucherId
 
 --  3. 脚本业务
 --  3.1 首先判断库存是否充足
-if (tonumber(redis.call('get', stockKey)) <= 0) then
+local stock = redis.call('get', stockKey)
+if (stock == false) then
+    -- 3.2 库存 key 不存在 (还没有加载), 不算售罄, 返回 3
+    return 3
+end
+if ((tonumber(stock) or 0) <= 0) then
     -- 3.2 库存不足, 返回 1
     return 1
 end
@@ -40,8 +48,8 @@ redis.call('incrby', stockKey, -1)
 --  3.5 下单 (保存用户)
 redis.call('sadd', orderKey, userId)
 
---  3.6 发送消息到队列, xAdd stream.orders * k1 v1 k2 v2 ...
-redis.call('xadd', 'stream.orders', '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+--  3.6 发送消息到队列, xAdd stream.orders:n * k1 v1 k2 v2 ...
+redis.call('xadd', streamKey, '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
 
 --  4. 返回正常结果 0
 return 0
\ No newline at end of file
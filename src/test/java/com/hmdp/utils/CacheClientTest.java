@@ -0,0 +1,152 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/19 10:20
+ * @Description: CacheClient 缓存穿透查询, Redis 用 Map 模拟
+ */
+class CacheClientTest {
+
+    private final Map<String, byte[]> redis = new ConcurrentHashMap<>();
+
+    private final Map<Long, Shop> db = new HashMap<>();
+
+    private final AtomicInteger dbQueries = new AtomicInteger();
+
+    private CacheClient cacheClient;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedisConnection connection = mock(RedisConnection.class);
+        when(connection.get(any(byte[].class))).thenAnswer(inv -> redis.get(str(inv.getArgument(0))));
+        when(connection.set(any(byte[].class), any(byte[].class), any(Expiration.class), any(RedisStringCommands.SetOption.class)))
+                .thenAnswer(inv -> {
+                    redis.put(str(inv.getArgument(0)), inv.getArgument(1));
+                    return true;
+                });
+
+        StringRedisTemplate template = mock(StringRedisTemplate.class);
+        when(template.execute(any(RedisCallback.class)))
+                .thenAnswer(inv -> ((RedisCallback<Object>) inv.getArgument(0)).doInRedis(connection));
+        when(template.delete(anyString())).thenAnswer(inv -> redis.remove((String) inv.getArgument(0)) != null);
+
+        cacheClient = new CacheClient();
+        ReflectionTestUtils.setField(cacheClient, "stringRedisTemplate", template);
+        ReflectionTestUtils.setField(cacheClient, "localCache", new LocalCache());
+        ReflectionTestUtils.setField(cacheClient, "singleFlight", new SingleFlight());
+        ReflectionTestUtils.setField(cacheClient, "cacheCodec", new JsonCacheCodec());
+
+        db.put(1L, shop(1L, "旧店名"));
+    }
+
+    @Test
+    void queryWithPassThroughUsesPrefixPlusId() {
+        //  1. 第一次查询走数据库, 写入 cache:shop:1
+        assertEquals("旧店名", query(1L).getName());
+        assertEquals(1, dbQueries.get());
+        assertTrue(redis.containsKey(CACHE_SHOP_KEY + 1));
+        assertFalse(redis.containsKey(CACHE_SHOP_KEY + 11));
+        assertEquals(1, redis.size());
+
+        //  2. 再次查询命中缓存
+        assertEquals("旧店名", query(1L).getName());
+        assertEquals(1, dbQueries.get());
+
+        //  3. 更新数据库, 删除缓存
+        db.put(1L, shop(1L, "新店名"));
+        cacheClient.delete(CACHE_SHOP_KEY + 1);
+        assertTrue(redis.isEmpty());
+
+        //  4. 再次查询读到新数据
+        assertEquals("新店名", query(1L).getName());
+        assertEquals(2, dbQueries.get());
+        assertTrue(redis.containsKey(CACHE_SHOP_KEY + 1));
+        assertEquals(1, redis.size());
+    }
+
+    @Test
+    void queryWithPassThroughSkipsNullValueWhenGuardedByBloomFilter() {
+        //  3 在布隆过滤器中 (相当于误判), 但是数据库中没有
+        cacheClient.rebuildBloomFilter(Collections.singletonList(CACHE_SHOP_KEY), 1000, sink -> {
+            sink.accept(1L);
+            sink.accept(3L);
+        });
+
+        assertNull(query(3L));
+        assertEquals(1, dbQueries.get());
+        //  有布隆过滤器时不往 Redis 写空值
+        assertTrue(redis.isEmpty());
+
+        //  空值缓存在本地, 不会再查数据库
+        assertNull(query(3L));
+        assertEquals(1, dbQueries.get());
+    }
+
+    @Test
+    void queryWithLogicalExpireLoadsAbsentKey() {
+        //  Redis 中没有 (没有预热到, 或者更新后被删除了), 同步加载并写入缓存
+        assertEquals("旧店名", queryLogical(1L).getName());
+        assertEquals(1, dbQueries.get());
+        assertTrue(redis.containsKey(CACHE_SHOP_KEY + 1));
+
+        //  更新后删除缓存, 再查询读到新数据
+        db.put(1L, shop(1L, "新店名"));
+        cacheClient.delete(CACHE_SHOP_KEY + 1);
+        assertEquals("新店名", queryLogical(1L).getName());
+        assertEquals(2, dbQueries.get());
+
+        //  之后命中缓存
+        assertEquals("新店名", queryLogical(1L).getName());
+        assertEquals(2, dbQueries.get());
+    }
+
+    private Shop query(Long id) {
+        return cacheClient.queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, shopId -> {
+            dbQueries.incrementAndGet();
+            return db.get(shopId);
+        }, 30L, TimeUnit.MINUTES);
+    }
+
+    private Shop queryLogical(Long id) {
+        return cacheClient.queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, shopId -> {
+            dbQueries.incrementAndGet();
+            return db.get(shopId);
+        }, 30L, TimeUnit.MINUTES);
+    }
+
+    private static Shop shop(Long id, String name) {
+        Shop shop = new Shop();
+        shop.setId(id);
+        shop.setName(name);
+        return shop;
+    }
+
+    private static String str(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,44 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @Author: dy
+ * @Date: 2026/10/19 14:30
+ * @Description: 从 RedisIdWorker 切换到 SnowflakeIdWorker 之后, 新 id 必须比切换前生成的 id 大
+ */
+class SnowflakeIdWorkerTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void snowflakeIdIsGreaterThanRedisIdAtSameInstant() {
+        //  序列号取当天能达到的最大值, 这是 RedisIdWorker 在同一秒内能生成的最大 id
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        when(ops.increment(anyString())).thenReturn((1L << 32) - 1);
+        StringRedisTemplate template = mock(StringRedisTemplate.class);
+        when(template.opsForValue()).thenReturn(ops);
+
+        RedisIdWorker redisIdWorker = new RedisIdWorker();
+        ReflectionTestUtils.setField(redisIdWorker, "stringRedisTemplate", template);
+        ReflectionTestUtils.setField(redisIdWorker, "mode", "redis");
+
+        //  worker id 和序列号都取最小值
+        SnowflakeIdWorker snowflakeIdWorker = new SnowflakeIdWorker();
+        ReflectionTestUtils.setField(snowflakeIdWorker, "workerId", 0L);
+        ReflectionTestUtils.setField(snowflakeIdWorker, "leaseExpireAt", Long.MAX_VALUE);
+
+        long redisId = redisIdWorker.nextId("order");
+        long snowflakeId = snowflakeIdWorker.nextId("order");
+
+        assertTrue(redisId > 0);
+        assertTrue(snowflakeId > redisId, snowflakeId + " <= " + redisId);
+    }
+}